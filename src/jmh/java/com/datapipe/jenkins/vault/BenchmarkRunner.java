@@ -0,0 +1,34 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.BenchmarkFinder;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark annotated with {@link jenkins.benchmark.jmh.JmhBenchmark}, see the
+ * {@code benchmark} profile. The report is written to {@code target/jmh-report.json}.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .mode(Mode.AverageTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .shouldFailOnError(true)
+            .shouldDoGC(true)
+            .resultFormat(ResultFormatType.JSON)
+            .result("target/jmh-report.json");
+
+        new BenchmarkFinder(getClass()).findBenchmarks(options);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.EnvVars;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * End to end secret retrieval of a build against an in-process stub Vault, including
+ * configuration resolution, authentication and the HTTP round trips, see {@link FakeVaultServer}.
+ */
+@JmhBenchmark
+public class RetrieveVaultSecretsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class VaultState extends JmhBenchmarkState {
+
+        @Param({"1", "10", "50"})
+        public int pathCount;
+
+        @Param({"1", "4"})
+        public int maxConcurrentReads;
+
+        FakeVaultServer server;
+        FreeStyleBuild run;
+        VaultConfiguration configuration;
+        final List<VaultSecret> secrets = new ArrayList<>();
+        final EnvVars envVars = new EnvVars();
+        final PrintStream logger = new PrintStream(OutputStream.nullOutputStream());
+
+        @Override
+        public void setup() throws Exception {
+            server = new FakeVaultServer();
+
+            FreeStyleProject project = getJenkins().createProject(FreeStyleProject.class,
+                "benchmark");
+            run = mock(FreeStyleBuild.class);
+            when(run.getParent()).thenReturn(project);
+
+            configuration = new VaultConfiguration();
+            configuration.setVaultUrl(server.getUrl());
+            configuration.setVaultCredential(new VaultTokenCredential(CredentialsScope.GLOBAL,
+                "vault-token", "", Secret.fromString(FakeVaultServer.ROOT_TOKEN)));
+            configuration.setEngineVersion(2);
+            configuration.setMaxConcurrentReads(maxConcurrentReads);
+
+            Map<String, String> data = new HashMap<>();
+            data.put("username", "admin");
+            data.put("password", "s3cr3t");
+            for (int i = 0; i < pathCount; i++) {
+                server.putSecret("secret/app" + i, data);
+                secrets.add(new VaultSecret("secret/app" + i, Arrays.asList(
+                    new VaultSecretValue("USER_" + i, "username"),
+                    new VaultSecretValue("PASSWORD_" + i, "password"))));
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> retrieveVaultSecrets(VaultState state) {
+        return VaultAccessor.retrieveVaultSecrets(state.run, state.logger, state.envVars, null,
+            state.configuration, state.secrets);
+    }
+}
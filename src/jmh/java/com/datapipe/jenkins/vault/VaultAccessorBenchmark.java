@@ -0,0 +1,53 @@
+package com.datapipe.jenkins.vault;
+
+import hudson.EnvVars;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Path normalization and policy generation, which run for every secret and every build.
+ */
+@JmhBenchmark
+public class VaultAccessorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PathState {
+
+        @Param({"secret/data/team/app", "/secret//data///team/app"})
+        public String path;
+    }
+
+    @State(Scope.Benchmark)
+    public static class PolicyState {
+
+        @Param({"folder/job", "a/b/c/d/e/f/job"})
+        public String jobName;
+
+        String policies;
+        EnvVars envVars;
+
+        @Setup
+        public void setup() {
+            policies = "\npol1\n\nbase_${job_base_name}\njob/${job_name}\n job_${job_name_us}\n"
+                + "folder/${job_folder}\nfolder_${job_folder_us}\nnode_${node_name}\n";
+            envVars = new EnvVars("JOB_NAME", jobName,
+                "JOB_BASE_NAME", jobName.substring(jobName.lastIndexOf('/') + 1),
+                "NODE_NAME", "agent-1");
+        }
+    }
+
+    @Benchmark
+    public String normalizePath(PathState state) {
+        return VaultAccessor.normalizePath(state.path);
+    }
+
+    @Benchmark
+    public List<String> generatePolicies(PolicyState state) {
+        return VaultAccessor.generatePolicies(state.policies, state.envVars);
+    }
+}
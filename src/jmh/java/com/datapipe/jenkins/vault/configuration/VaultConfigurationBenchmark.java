@@ -0,0 +1,55 @@
+package com.datapipe.jenkins.vault.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Merging a job configuration with the configurations of its folders, innermost first, as
+ * {@link com.datapipe.jenkins.vault.VaultAccessor#pullAndMergeConfiguration} does.
+ */
+@JmhBenchmark
+public class VaultConfigurationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FolderChainState {
+
+        @Param({"1", "5", "20"})
+        public int depth;
+
+        VaultConfiguration job;
+        final List<VaultConfiguration> folders = new ArrayList<>();
+
+        @Setup
+        public void setup() {
+            job = new VaultConfiguration();
+            job.setPolicies("job-policy");
+            for (int i = 0; i < depth; i++) {
+                VaultConfiguration folder = new VaultConfiguration();
+                // every level sets something, the root folder sets the connection
+                folder.setPrefixPath(i % 2 == 0 ? "folder" + i : null);
+                folder.setTimeout(i % 3 == 0 ? 30 : null);
+                if (i == depth - 1) {
+                    folder.setVaultUrl("http://localhost:8200");
+                    folder.setVaultCredentialId("vault-token");
+                    folder.setEngineVersion(2);
+                }
+                folders.add(folder);
+            }
+        }
+    }
+
+    @Benchmark
+    public VaultConfiguration mergeWithParent(FolderChainState state) {
+        VaultConfiguration result = state.job;
+        for (VaultConfiguration folder : state.folders) {
+            result = result.mergeWithParent(folder);
+        }
+        return result;
+    }
+}
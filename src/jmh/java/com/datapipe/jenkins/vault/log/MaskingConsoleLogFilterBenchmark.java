@@ -0,0 +1,86 @@
+package com.datapipe.jenkins.vault.log;
+
+import hudson.model.Run;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Masking throughput of the regex and the automaton engines for a block of console lines, where
+ * one line in ten contains a secret.
+ */
+@JmhBenchmark
+public class MaskingConsoleLogFilterBenchmark {
+
+    private static final int LINES = 100;
+    private static final String ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ";
+
+    @State(Scope.Benchmark)
+    public static class MaskingState extends JmhBenchmarkState {
+
+        @Param({"regex", "automaton"})
+        public String engine;
+
+        @Param({"10", "100", "500"})
+        public int secretCount;
+
+        @Param({"80", "4096"})
+        public int lineLength;
+
+        OutputStream logger;
+        final List<byte[]> lines = new ArrayList<>();
+
+        @Override
+        public void setup() throws Exception {
+            Random random = new Random(42);
+            List<String> secrets = new ArrayList<>();
+            for (int i = 0; i < secretCount; i++) {
+                // one in ten secrets is a multi-line value such as a PEM key
+                secrets.add(i % 10 == 0
+                    ? "-----BEGIN KEY-----\n" + randomText(random, 64) + "\n-----END KEY-----"
+                    : randomText(random, 16 + random.nextInt(16)));
+            }
+            for (int i = 0; i < LINES; i++) {
+                String line = randomText(random, lineLength);
+                if (i % 10 == 0) {
+                    String secret = secrets.get(random.nextInt(secrets.size())).split("\n")[0];
+                    line = secret + line.substring(Math.min(secret.length(), line.length()));
+                }
+                lines.add((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            MaskingConsoleLogFilter.USE_AUTOMATON = "automaton".equals(engine);
+            MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(
+                StandardCharsets.UTF_8.name(), secrets);
+            logger = filter.decorateLogger(mock(Run.class), OutputStream.nullOutputStream());
+            MaskingConsoleLogFilter.USE_AUTOMATON = false;
+        }
+
+        private static String randomText(Random random, int length) {
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            return sb.toString();
+        }
+    }
+
+    @Benchmark
+    public void maskLines(MaskingState state) throws IOException {
+        for (byte[] line : state.lines) {
+            state.logger.write(line);
+        }
+    }
+}
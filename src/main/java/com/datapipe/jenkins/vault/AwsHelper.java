@@ -14,6 +14,7 @@ import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
 import io.github.jopenlibs.vault.json.JsonArray;
 import io.github.jopenlibs.vault.json.JsonObject;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
@@ -35,6 +36,13 @@ public class AwsHelper {
     public static String getToken(@NonNull Auth auth, @CheckForNull AWSCredentials credentials,
                                   @CheckForNull String role, @CheckForNull String serverIdValue,
                                   @CheckForNull String mountPath) throws VaultPluginException {
+        return login(auth, credentials, role, serverIdValue, mountPath).getAuthClientToken();
+    }
+
+    @NonNull
+    public static AuthResponse login(@NonNull Auth auth, @CheckForNull AWSCredentials credentials,
+                                     @CheckForNull String role, @CheckForNull String serverIdValue,
+                                     @CheckForNull String mountPath) throws VaultPluginException {
         final EncodedIdentityRequest request;
         try {
             request = new EncodedIdentityRequest(credentials, serverIdValue);
@@ -47,8 +55,7 @@ public class AwsHelper {
         final String requestMountPath = Util.fixEmptyAndTrim(mountPath);
         try {
             return auth.loginByAwsIam(requestRole, request.encodedUrl, request.encodedBody,
-                                      request.encodedHeaders, requestMountPath)
-                .getAuthClientToken();
+                                      request.encodedHeaders, requestMountPath);
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
@@ -0,0 +1,356 @@
+package com.datapipe.jenkins.vault;
+
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.github.jopenlibs.vault.json.Json;
+import io.github.jopenlibs.vault.json.JsonValue;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.response.LookupResponse;
+import io.github.jopenlibs.vault.response.VaultResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.tasks.SimpleBuildWrapper;
+import jenkins.util.Timer;
+
+/**
+ * Keeps the leases of dynamic secrets read for a {@code withVault} block or a
+ * {@link VaultBuildWrapper} alive while the build uses them, and revokes them at the end.
+ *
+ * <p>Renewable leases are renewed like tokens, see {@link TokenRenewal}, with their original
+ * duration as increment, until Vault stops extending them. Vault revokes the leases of a token
+ * when it expires, so the token the leases were read with is renewed along with them. Failed
+ * renewals are retried while the lease or token is still valid. Builds only keep the id of the
+ * renewer, so after a controller restart the leases are no longer renewed and expire with their
+ * TTL.
+ */
+public final class LeaseRenewer {
+
+    private static final Logger LOGGER = Logger.getLogger(LeaseRenewer.class.getName());
+
+    private static final Map<String, LeaseRenewer> ACTIVE = new ConcurrentHashMap<>();
+
+    /**
+     * Delay before retrying a failed renewal.
+     */
+    private static final long RETRY_SECONDS = 10L;
+
+    private final String id = UUID.randomUUID().toString();
+
+    // lease id to lease, guarded by this
+    private final Map<String, Lease> leases = new LinkedHashMap<>();
+    private VaultAccessor vaultAccessor;
+    private VaultConfiguration configuration;
+    private boolean stopped;
+    // renewal of the token of vaultAccessor, guarded by this
+    private final Lease token = new Lease();
+    private boolean tokenTracked;
+
+    private LeaseRenewer() {
+    }
+
+    /**
+     * Create a renewer, to be passed to {@link VaultAccessor#retrieveVaultSecrets}.
+     * @return the new renewer
+     */
+    @NonNull
+    public static LeaseRenewer create() {
+        LeaseRenewer renewer = new LeaseRenewer();
+        ACTIVE.put(renewer.id, renewer);
+        return renewer;
+    }
+
+    /**
+     * Stop renewing the leases of a renewer and revoke them.
+     * @param id the renewer id, see {@link #getId()}
+     * @param run the build
+     * @param listener the build listener
+     */
+    public static void finish(@CheckForNull String id, Run<?, ?> run, TaskListener listener)
+        throws IOException, InterruptedException {
+        if (id == null) {
+            return;
+        }
+        LeaseRenewer renewer = ACTIVE.get(id);
+        if (renewer == null) {
+            listener.getLogger().println("Vault leases were not renewed since the controller "
+                + "restarted, they expire with their TTL");
+            return;
+        }
+        renewer.finish(run, listener);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return whether no lease is tracked
+     */
+    public synchronized boolean isEmpty() {
+        return leases.isEmpty();
+    }
+
+    /**
+     * Track the lease of a response.
+     * @param vaultAccessor the accessor the response was read with
+     * @param configuration the effective configuration of the accessor
+     * @param response the response with a lease
+     */
+    void track(@NonNull VaultAccessor vaultAccessor,
+        @NonNull VaultConfiguration configuration, @NonNull LogicalResponse response) {
+        String leaseId = response.getLeaseId();
+        synchronized (this) {
+            if (stopped || leaseId == null || leaseId.isEmpty() || leases.containsKey(leaseId)) {
+                return;
+            }
+            this.vaultAccessor = vaultAccessor;
+            this.configuration = configuration;
+            Long duration = response.getLeaseDuration();
+            Lease lease = new Lease();
+            if (duration != null) {
+                lease.extend(duration);
+                if (Boolean.TRUE.equals(response.getRenewable())) {
+                    lease.renewal = schedule(leaseId, duration);
+                }
+            }
+            leases.put(leaseId, lease);
+            if (tokenTracked) {
+                return;
+            }
+            tokenTracked = true;
+        }
+        trackToken();
+    }
+
+    /**
+     * Look up the token of the accessor and schedule its renewal if it expires.
+     */
+    void trackToken() {
+        VaultAccessor accessor;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            accessor = vaultAccessor;
+        }
+        try {
+            LookupResponse lookup = accessor.lookupToken();
+            long ttl = lookup.getTTL();
+            if (ttl <= 0) {
+                return;
+            }
+            if (!lookup.isRenewable()) {
+                LOGGER.log(Level.WARNING, "The Vault token used to read leases is not renewable, "
+                    + "Vault revokes the leases when it expires in {0}s", ttl);
+            }
+            synchronized (this) {
+                token.extend(ttl);
+                if (!stopped && lookup.isRenewable()) {
+                    token.reschedule(scheduleToken(ttl));
+                }
+            }
+        } catch (VaultPluginException e) {
+            LOGGER.log(Level.WARNING, "Could not look up the Vault token used to read leases, "
+                + "it is not renewed and Vault revokes the leases when it expires", e);
+        }
+    }
+
+    /**
+     * Stop renewing and revoke every tracked lease.
+     * @param run the build
+     * @param listener the build listener
+     */
+    public void finish(Run<?, ?> run, TaskListener listener)
+        throws IOException, InterruptedException {
+        List<String> leaseIds;
+        VaultAccessor accessor;
+        VaultConfiguration config;
+        synchronized (this) {
+            stopped = true;
+            ACTIVE.remove(id);
+            for (Lease lease : leases.values()) {
+                lease.reschedule(null);
+            }
+            token.reschedule(null);
+            leaseIds = new ArrayList<>(leases.keySet());
+            leases.clear();
+            accessor = vaultAccessor;
+            config = configuration;
+        }
+        if (accessor != null && !leaseIds.isEmpty()) {
+            new VaultDisposer(config, accessor.getCredential(), leaseIds)
+                .tearDown(run, null, null, listener);
+        }
+    }
+
+    private ScheduledFuture<?> schedule(String leaseId, long duration) {
+        return TokenRenewal.schedule(() -> renew(leaseId, duration), duration);
+    }
+
+    private ScheduledFuture<?> scheduleToken(long ttl) {
+        ScheduledFuture<?> renewal = TokenRenewal.schedule(this::renewToken, ttl);
+        if (renewal == null) {
+            LOGGER.log(Level.WARNING, "The Vault token used to read leases is not renewed in "
+                + "background, Vault revokes the leases when it expires in {0}s", ttl);
+        }
+        return renewal;
+    }
+
+    /**
+     * Renew a lease and schedule its next renewal, or a retry if the renewal failed.
+     * @param leaseId the lease
+     * @param increment the requested duration in seconds
+     * @return whether the lease was renewed
+     */
+    boolean renew(String leaseId, long increment) {
+        VaultAccessor accessor;
+        synchronized (this) {
+            if (stopped || !leases.containsKey(leaseId)) {
+                return false;
+            }
+            accessor = vaultAccessor;
+        }
+        try {
+            VaultResponse response = accessor.renew(leaseId, increment);
+            long duration = getLeaseDuration(response, increment);
+            synchronized (this) {
+                Lease lease = leases.get(leaseId);
+                if (!stopped && lease != null) {
+                    lease.extend(duration);
+                    lease.reschedule(schedule(leaseId, duration));
+                }
+            }
+            return true;
+        } catch (VaultPluginException e) {
+            synchronized (this) {
+                Lease lease = leases.get(leaseId);
+                if (!stopped && lease != null) {
+                    lease.reschedule(retry(() -> renew(leaseId, increment), lease,
+                        "Vault lease " + leaseId, e));
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Renew the token of the accessor and schedule its next renewal, or a retry if the renewal
+     * failed.
+     * @return whether the token was renewed
+     */
+    boolean renewToken() {
+        VaultAccessor accessor;
+        synchronized (this) {
+            if (stopped || vaultAccessor == null) {
+                return false;
+            }
+            accessor = vaultAccessor;
+        }
+        try {
+            long ttl = accessor.renewToken().getAuthLeaseDuration();
+            synchronized (this) {
+                if (!stopped) {
+                    token.extend(ttl);
+                    token.reschedule(scheduleToken(ttl));
+                }
+            }
+            return true;
+        } catch (VaultPluginException e) {
+            synchronized (this) {
+                if (!stopped) {
+                    token.reschedule(retry(this::renewToken, token,
+                        "the Vault token used to read leases", e));
+                }
+            }
+            return false;
+        }
+    }
+
+    private static ScheduledFuture<?> retry(Runnable task, Lease lease, String what,
+        VaultPluginException e) {
+        long remaining = lease.expiresAt - System.currentTimeMillis();
+        if (lease.expiresAt == 0 || remaining <= TimeUnit.SECONDS.toMillis(RETRY_SECONDS)) {
+            LOGGER.log(Level.WARNING, "Could not renew " + what + ", giving up as it expires in "
+                + TimeUnit.MILLISECONDS.toSeconds(Math.max(remaining, 0)) + "s", e);
+            return null;
+        }
+        LOGGER.log(Level.WARNING, "Could not renew " + what + ", retrying in " + RETRY_SECONDS
+            + "s", e);
+        return Timer.get().schedule(task, RETRY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long getLeaseDuration(VaultResponse response, long fallback) {
+        RestResponse restResponse = response.getRestResponse();
+        if (restResponse == null || restResponse.getBody() == null) {
+            return fallback;
+        }
+        try {
+            JsonValue json = Json.parse(
+                new String(restResponse.getBody(), StandardCharsets.UTF_8));
+            return json.isObject()
+                ? json.asObject().getLong("lease_duration", fallback) : fallback;
+        } catch (RuntimeException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Expiry and scheduled renewal of a lease or token, guarded by the renewer.
+     */
+    private static final class Lease {
+
+        // 0 if unknown
+        private long expiresAt;
+        private ScheduledFuture<?> renewal;
+
+        void extend(long seconds) {
+            expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        }
+
+        void reschedule(ScheduledFuture<?> next) {
+            if (renewal != null && !renewal.isDone()) {
+                renewal.cancel(false);
+            }
+            renewal = next;
+        }
+    }
+
+    /**
+     * Finishes a renewer when a {@link VaultBuildWrapper} build ends.
+     */
+    public static final class Disposer extends SimpleBuildWrapper.Disposer {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        public Disposer(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void tearDown(Run<?, ?> build, FilePath workspace, Launcher launcher,
+            TaskListener listener) throws IOException, InterruptedException {
+            finish(id, build, listener);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsUnavailableException;
+import com.cloudbees.plugins.credentials.matchers.IdMatcher;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Durable queue of lease revocations, drained in background so that builds do not wait for
+ * Vault when they end.
+ *
+ * <p>Pending revocations are stored in {@code JENKINS_HOME} before the build continues, and are
+ * picked up again after a restart. Only the connection settings, the credential id and the item
+ * the credential was looked up from are stored; the credential is looked up again when revoking.
+ * Credentials configured inline are only kept in memory, so their leases are dropped with a
+ * warning after a restart.
+ * Failed revocations are retried with exponential backoff, from {@code initialBackoffSeconds} up
+ * to {@code maxBackoffSeconds}, and dropped with a warning after {@code maxAttempts} attempts.
+ */
+@Extension
+public class LeaseRevocationQueue extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(LeaseRevocationQueue.class.getName());
+
+    private static final long RECURRENCE_PERIOD = TimeUnit.SECONDS.toMillis(
+        SystemProperties.getLong(LeaseRevocationQueue.class.getName() + ".recurrencePeriodSeconds",
+            60L));
+
+    private static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(
+        SystemProperties.getLong(LeaseRevocationQueue.class.getName() + ".initialBackoffSeconds",
+            30L));
+
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(
+        SystemProperties.getLong(LeaseRevocationQueue.class.getName() + ".maxBackoffSeconds",
+            3600L));
+
+    private static final int MAX_ATTEMPTS = SystemProperties.getInteger(
+        LeaseRevocationQueue.class.getName() + ".maxAttempts", 30);
+
+    private final ReentrantLock draining = new ReentrantLock();
+
+    // guarded by this
+    private List<Revocation> revocations;
+
+    public LeaseRevocationQueue() {
+        super("Vault lease revocation");
+    }
+
+    public static LeaseRevocationQueue get() {
+        return ExtensionList.lookupSingleton(LeaseRevocationQueue.class);
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        drain();
+    }
+
+    /**
+     * Queue leases for revocation and start revoking them in background.
+     * @param configuration the configuration of the Vault server that issued the leases
+     * @param credential the credential used to authenticate
+     * @param context the full name of the item the credential was looked up from, or null for
+     *     global credentials
+     * @param leaseIds the leases to revoke
+     * @throws IOException if the queue could not be saved
+     */
+    public void add(@NonNull VaultConfiguration configuration, VaultCredential credential,
+        @CheckForNull String context, @NonNull Collection<String> leaseIds) throws IOException {
+        synchronized (this) {
+            load().add(new Revocation(configuration, credential, context, leaseIds));
+            save();
+        }
+        Timer.get().submit(() -> {
+            try {
+                drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * @return the number of leases waiting to be revoked
+     */
+    public synchronized int size() {
+        return load().stream().mapToInt(r -> r.leaseIds.size()).sum();
+    }
+
+    /**
+     * Try every revocation that is due. Runs at most once at a time.
+     * @throws InterruptedException if interrupted while revoking
+     */
+    void drain() throws InterruptedException {
+        if (!draining.tryLock()) {
+            return;
+        }
+        try {
+            List<Revocation> due = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                for (Revocation revocation : load()) {
+                    if (revocation.nextAttemptAt <= now) {
+                        due.add(revocation);
+                    }
+                }
+            }
+            for (Revocation revocation : due) {
+                Map<String, String> failures = revoke(revocation);
+                synchronized (this) {
+                    if (failures.isEmpty()) {
+                        revocations.remove(revocation);
+                    } else if (++revocation.attempts >= MAX_ATTEMPTS) {
+                        LOGGER.log(Level.WARNING, "Giving up revoking Vault leases {0} after {1} "
+                            + "attempts: {2}", new Object[] {failures.keySet(),
+                            revocation.attempts, failures.values()});
+                        revocations.remove(revocation);
+                    } else {
+                        revocation.leaseIds = new ArrayList<>(failures.keySet());
+                        revocation.nextAttemptAt = System.currentTimeMillis()
+                            + getBackoffMillis(revocation.attempts);
+                        LOGGER.log(Level.FINE, "Could not revoke Vault leases {0}, retrying in "
+                            + "{1} ms: {2}", new Object[] {failures.keySet(),
+                            getBackoffMillis(revocation.attempts), failures.values()});
+                    }
+                    saveQuietly();
+                }
+            }
+        } finally {
+            draining.unlock();
+        }
+    }
+
+    private static Map<String, String> revoke(Revocation revocation)
+        throws InterruptedException {
+        LinkedHashSet<String> leases = new LinkedHashSet<>(revocation.leaseIds);
+        try {
+            VaultAccessor vaultAccessor = VaultDisposer.newVaultAccessor(
+                revocation.getConfiguration(), lookupCredential(revocation));
+            return VaultDisposer.revokeAll(vaultAccessor, leases);
+        } catch (RuntimeException e) {
+            // could not log in, every lease failed
+            Map<String, String> failures = new LinkedHashMap<>();
+            for (String leaseId : leases) {
+                failures.put(leaseId, String.valueOf(e.getMessage()));
+            }
+            return failures;
+        }
+    }
+
+    @CheckForNull
+    private static VaultCredential lookupCredential(Revocation revocation) {
+        if (revocation.inlineCredential != null) {
+            return revocation.inlineCredential;
+        }
+        if (StringUtils.isBlank(revocation.credentialId)) {
+            return null;
+        }
+        Jenkins jenkins = Jenkins.get();
+        Item item = revocation.context == null ? null
+            : jenkins.getItemByFullName(revocation.context);
+        List<VaultCredential> credentials = item == null
+            ? CredentialsProvider.lookupCredentialsInItemGroup(VaultCredential.class, jenkins,
+                ACL.SYSTEM2, Collections.emptyList())
+            : CredentialsProvider.lookupCredentialsInItem(VaultCredential.class, item,
+                ACL.SYSTEM2, Collections.emptyList());
+        VaultCredential credential = CredentialsMatchers.firstOrNull(credentials,
+            new IdMatcher(revocation.credentialId));
+        if (credential == null) {
+            throw new CredentialsUnavailableException(revocation.credentialId);
+        }
+        return credential;
+    }
+
+    static long getBackoffMillis(int attempts) {
+        long backoff = INITIAL_BACKOFF;
+        for (int i = 1; i < attempts && backoff < MAX_BACKOFF; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, MAX_BACKOFF);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Revocation> load() {
+        if (revocations == null) {
+            revocations = new ArrayList<>();
+            XmlFile file = getFile();
+            if (file.exists()) {
+                try {
+                    revocations.addAll((List<Revocation>) file.read());
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not load pending Vault lease revocations "
+                        + "from " + file, e);
+                }
+            }
+            revocations.removeIf(revocation -> {
+                if (revocation.inline && revocation.inlineCredential == null) {
+                    LOGGER.log(Level.WARNING, "Cannot revoke Vault leases {0} of {1} after a "
+                        + "restart, the credential was configured inline and is not saved",
+                        new Object[] {revocation.leaseIds, revocation.vaultUrl});
+                    return true;
+                }
+                return false;
+            });
+        }
+        return revocations;
+    }
+
+    private void save() throws IOException {
+        getFile().write(new ArrayList<>(revocations));
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save pending Vault lease revocations", e);
+        }
+    }
+
+    private static XmlFile getFile() {
+        return new XmlFile(new File(Jenkins.get().getRootDir(),
+            LeaseRevocationQueue.class.getName() + ".xml"));
+    }
+
+    /**
+     * Leases of one build waiting to be revoked.
+     */
+    static final class Revocation {
+
+        private final String vaultUrl;
+        private final String vaultNamespace;
+        private final String prefixPath;
+        private final Integer engineVersion;
+        private final Boolean skipSslVerification;
+        private final Integer timeout;
+        private final String credentialId;
+        private final String context;
+        // not looked up from a credentials store, never saved
+        private final transient VaultCredential inlineCredential;
+        private final boolean inline;
+        private List<String> leaseIds;
+        private int attempts;
+        private long nextAttemptAt;
+
+        Revocation(VaultConfiguration configuration, VaultCredential credential, String context,
+            Collection<String> leaseIds) {
+            this.vaultUrl = configuration.getVaultUrl();
+            this.vaultNamespace = configuration.getVaultNamespace();
+            this.prefixPath = configuration.getPrefixPath();
+            this.engineVersion = configuration.getEngineVersion();
+            this.skipSslVerification = configuration.getSkipSslVerification();
+            this.timeout = configuration.getTimeout();
+            this.credentialId = credential != null ? credential.getId()
+                : configuration.getVaultCredentialId();
+            this.context = context;
+            this.inlineCredential = configuration.getVaultCredential();
+            this.inline = inlineCredential != null;
+            this.leaseIds = new ArrayList<>(leaseIds);
+        }
+
+        VaultConfiguration getConfiguration() {
+            VaultConfiguration configuration = new VaultConfiguration();
+            configuration.setVaultUrl(vaultUrl);
+            configuration.setVaultNamespace(vaultNamespace);
+            configuration.setPrefixPath(prefixPath);
+            configuration.setEngineVersion(engineVersion);
+            configuration.setSkipSslVerification(skipSslVerification);
+            configuration.setTimeout(timeout);
+            configuration.setVaultCredentialId(credentialId);
+            return configuration.fixDefaults();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Schedules background renewal of Vault tokens, so that builds do not pay for a login when a
+ * cached token is about to expire.
+ *
+ * <p>A token is renewed once {@code renewAtTtlPercent} percent of its TTL has elapsed
+ * (67 by default). Setting the property to 0 disables background renewal; tokens are then
+ * re-issued on demand when they expire.
+ */
+public final class TokenRenewal {
+
+    private static final int RENEW_AT_TTL_PERCENT = SystemProperties.getInteger(
+        TokenRenewal.class.getName() + ".renewAtTtlPercent", 67);
+
+    /**
+     * Tokens with a shorter TTL are re-issued on demand only.
+     */
+    private static final long MIN_TTL_SECONDS = 15L;
+
+    private TokenRenewal() {
+    }
+
+    /**
+     * Compute when a token should be renewed.
+     * @param ttlSeconds the token TTL in seconds
+     * @return the delay in milliseconds, or -1 if the token should not be renewed in background
+     */
+    public static long getRenewalDelayMillis(long ttlSeconds) {
+        if (RENEW_AT_TTL_PERCENT <= 0 || RENEW_AT_TTL_PERCENT >= 100
+            || ttlSeconds < MIN_TTL_SECONDS) {
+            return -1;
+        }
+        return TimeUnit.SECONDS.toMillis(ttlSeconds) * RENEW_AT_TTL_PERCENT / 100;
+    }
+
+    /**
+     * Schedule the renewal of a token.
+     * @param task the renewal task
+     * @param ttlSeconds the token TTL in seconds
+     * @return the scheduled renewal or null if the token should not be renewed in background
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long ttlSeconds) {
+        long delay = getRenewalDelayMillis(ttlSeconds);
+        if (delay < 0) {
+            return null;
+        }
+        return Timer.get().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -8,34 +8,52 @@ import com.datapipe.jenkins.vault.configuration.VaultConfigResolver;
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
 import com.datapipe.jenkins.vault.model.VaultSecret;
 import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.EnvVars;
-import hudson.ExtensionList;
 import hudson.Util;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.json.Json;
 import io.github.jopenlibs.vault.json.JsonArray;
 import io.github.jopenlibs.vault.json.JsonValue;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.response.LookupResponse;
 import io.github.jopenlibs.vault.response.VaultResponse;
 import io.github.jopenlibs.vault.rest.RestResponse;
 import java.io.PrintStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.text.StringSubstitutor;
 
@@ -44,13 +62,34 @@ public class VaultAccessor implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Share one request between identical reads (same Vault address, namespace, token, engine
+     * version and path) that are in flight at the same time.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static boolean COALESCE_READS = SystemProperties.getBoolean(
+        VaultAccessor.class.getName() + ".coalesceReads", true);
+
+    private static final Map<List<Object>, CompletableFuture<LogicalResponse>> IN_FLIGHT =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Runs the concurrent reads of every build, each call bounds its own reads with a semaphore.
+     */
+    private static final ExecutorService READ_EXECUTOR = Executors.newCachedThreadPool(
+        new NamingThreadFactory(new DaemonThreadFactory(), "VaultAccessor.read"));
+
     private VaultConfig config;
     private VaultCredential credential;
     private List<String> policies;
     private int maxRetries = 0;
     private int retryIntervalMilliseconds = 1000;
+    private int cacheTtl = 0;
+    private int cacheMaxSize = 0;
+    private boolean useHttp2 = false;
 
     private transient Vault vault;
+    private transient int cacheHits;
 
     public VaultAccessor() {
         this.config = new VaultConfig();
@@ -118,6 +157,40 @@ public class VaultAccessor implements Serializable {
         this.retryIntervalMilliseconds = retryIntervalMilliseconds;
     }
 
+    public int getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * Set how long successful reads are kept in the {@link VaultSecretCache}.
+     *
+     * @param cacheTtl time to live in seconds, {@code 0} disables caching
+     */
+    public void setCacheTtl(int cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(int cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public boolean isUseHttp2() {
+        return useHttp2;
+    }
+
+    /**
+     * Read secrets with {@link VaultTransport#read} instead of the driver.
+     *
+     * @param useHttp2 {@code true} to read secrets over HTTP/2
+     */
+    public void setUseHttp2(boolean useHttp2) {
+        this.useHttp2 = useHttp2;
+    }
+
     @Deprecated
     public void init(String url, VaultCredential credential) {
         config.address(url);
@@ -126,9 +199,61 @@ public class VaultAccessor implements Serializable {
 
     public LogicalResponse read(String path, Integer engineVersion) {
         String normalizedPath = normalizePath(path);
+        VaultSecretCache.Key cacheKey = null;
+        if (cacheTtl > 0) {
+            // the token init() authenticated with, credential IDs are not unique across folders
+            cacheKey = new VaultSecretCache.Key(config.getAddress(), config.getNameSpace(),
+                VaultSecretCache.identityOf(config.getToken()), engineVersion,
+                config.getPrefixPathDepth(), normalizedPath);
+            LogicalResponse cached = VaultSecretCache.get().get(cacheKey);
+            if (cached != null) {
+                recordCacheHit();
+                return cached;
+            }
+        }
+        if (!COALESCE_READS) {
+            return doRead(normalizedPath, engineVersion, cacheKey);
+        }
+
+        // Identical reads in flight at the same time, e.g. from builds started together, share
+        // one request to Vault.
+        List<Object> flightKey = Arrays.asList(config.getAddress(), config.getNameSpace(),
+            config.getToken(), engineVersion, config.getPrefixPathDepth(), normalizedPath);
+        CompletableFuture<LogicalResponse> flight = new CompletableFuture<>();
+        CompletableFuture<LogicalResponse> existing = IN_FLIGHT.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            LogicalResponse response = awaitRead(existing);
+            if (StringUtils.isEmpty(response.getLeaseId())) {
+                return response;
+            }
+            // a lease must not be shared between builds, each one gets its own
+            return doRead(normalizedPath, engineVersion, cacheKey);
+        }
+        try {
+            LogicalResponse response = doRead(normalizedPath, engineVersion, cacheKey);
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(flightKey, flight);
+        }
+    }
+
+    private LogicalResponse doRead(String normalizedPath, Integer engineVersion,
+        VaultSecretCache.Key cacheKey) {
         try {
             this.config.engineVersion(engineVersion);
-            return vault.logical().read(normalizedPath);
+            LogicalResponse response = VaultMetrics.time(VaultMetrics.READ,
+                () -> useHttp2 && VaultTransport.supportsHttp2(config)
+                    ? VaultTransport.read(config, normalizedPath, config.getGlobalEngineVersion(),
+                        maxRetries, retryIntervalMilliseconds)
+                    : vault.logical().read(normalizedPath));
+            if (cacheKey != null) {
+                VaultSecretCache.get().put(cacheKey, response, cacheTtl, cacheMaxSize);
+            }
+            return response;
         } catch (VaultException e) {
             throw new VaultPluginException(
                 "could not read from vault: " + e.getMessage() + " at path: "
@@ -136,15 +261,72 @@ public class VaultAccessor implements Serializable {
         }
     }
 
+    private static <T> T awaitRead(CompletableFuture<T> read) {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            // VaultAccessor.read only throws unchecked exceptions
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * @return number of reads of this accessor served from the {@link VaultSecretCache}
+     */
+    public synchronized int getCacheHits() {
+        return cacheHits;
+    }
+
+    private synchronized void recordCacheHit() {
+        cacheHits++;
+    }
+
     public VaultResponse revoke(String leaseId) {
         try {
-            return vault.leases().revoke(leaseId);
+            return VaultMetrics.time(VaultMetrics.REVOKE, () -> vault.leases().revoke(leaseId));
         } catch (VaultException e) {
             throw new VaultPluginException(
                 "could not revoke vault lease (" + leaseId + "):" + e.getMessage());
         }
     }
 
+    public VaultResponse renew(String leaseId, long increment) {
+        try {
+            return VaultMetrics.time(VaultMetrics.RENEW,
+                () -> vault.leases().renew(leaseId, increment));
+        } catch (VaultException e) {
+            throw new VaultPluginException(
+                "could not renew vault lease (" + leaseId + "):" + e.getMessage());
+        }
+    }
+
+    /**
+     * Look up the token this accessor authenticated with.
+     * @return the token TTL and whether it is renewable
+     */
+    public LookupResponse lookupToken() {
+        try {
+            return VaultMetrics.time(VaultMetrics.LOOKUP_SELF, () -> vault.auth().lookupSelf());
+        } catch (VaultException e) {
+            throw new VaultPluginException("could not look up vault token: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Extend the lifetime of the token this accessor authenticated with.
+     * @return the response with the new TTL of the token
+     */
+    public AuthResponse renewToken() {
+        try {
+            return vault.auth().renewSelf();
+        } catch (VaultException e) {
+            throw new VaultPluginException("could not renew vault token: " + e.getMessage(), e);
+        }
+    }
+
     private static StringSubstitutor getPolicyTokenSubstitutor(EnvVars envVars) {
         String jobName = envVars.get("JOB_NAME");
         String jobBaseName = envVars.get("JOB_BASE_NAME");
@@ -176,9 +358,43 @@ public class VaultAccessor implements Serializable {
     }
 
     public static Map<String, String> retrieveVaultSecrets(Run<?,?> run, PrintStream logger, EnvVars envVars, VaultAccessor vaultAccessor, VaultConfiguration initialConfiguration, List<VaultSecret> vaultSecrets) {
+        return retrieveVaultSecrets(run, logger, envVars, vaultAccessor, initialConfiguration,
+            vaultSecrets, null);
+    }
+
+    /**
+     * Read the secrets of a build, and track the leases of dynamic secrets.
+     *
+     * @param leaseRenewer renews the leases of the responses while the build runs, may be null
+     * @return the environment variable overrides
+     */
+    public static Map<String, String> retrieveVaultSecrets(Run<?, ?> run, PrintStream logger,
+        EnvVars envVars, VaultAccessor vaultAccessor, VaultConfiguration initialConfiguration,
+        List<VaultSecret> vaultSecrets, @CheckForNull LeaseRenewer leaseRenewer) {
+        return retrieveVaultSecrets(run, logger, envVars, vaultAccessor, initialConfiguration,
+            vaultSecrets, leaseRenewer, null);
+    }
+
+    /**
+     * Read the secrets of a build, track the leases of dynamic secrets and record how long
+     * each step took.
+     *
+     * @param leaseRenewer renews the leases of the responses while the build runs, may be null
+     * @param timing records the duration of each step, may be null
+     * @return the environment variable overrides
+     */
+    public static Map<String, String> retrieveVaultSecrets(Run<?, ?> run, PrintStream logger,
+        EnvVars envVars, VaultAccessor vaultAccessor, VaultConfiguration initialConfiguration,
+        List<VaultSecret> vaultSecrets, @CheckForNull LeaseRenewer leaseRenewer,
+        @CheckForNull VaultTimingAction.Timing timing) {
         Map<String, String> overrides = new HashMap<>();
+        if (timing == null) {
+            timing = new VaultTimingAction.Timing("unrecorded");
+        }
 
+        long started = System.nanoTime();
         VaultConfiguration config = pullAndMergeConfiguration(run, initialConfiguration);
+        timing.setConfigurationMillis(VaultTimingAction.Timing.since(started));
         String url = config.getVaultUrl();
 
         if (StringUtils.isBlank(url)) {
@@ -187,10 +403,12 @@ public class VaultAccessor implements Serializable {
         }
 
         VaultConfig vaultConfig = config.getVaultConfig();
+        started = System.nanoTime();
         VaultCredential credential = config.getVaultCredential();
         if (credential == null) {
             credential = retrieveVaultCredentials(run, config);
         }
+        timing.setCredentialsMillis(VaultTimingAction.Timing.since(started));
 
         String prefixPath = StringUtils.isBlank(config.getPrefixPath())
             ? ""
@@ -204,7 +422,22 @@ public class VaultAccessor implements Serializable {
         vaultAccessor.setPolicies(generatePolicies(config.getPolicies(), envVars));
         vaultAccessor.setMaxRetries(config.getMaxRetries());
         vaultAccessor.setRetryIntervalMilliseconds(config.getRetryIntervalMilliseconds());
+        vaultAccessor.setCacheTtl(config.getEffectiveCacheTtl());
+        vaultAccessor.setCacheMaxSize(config.getCacheMaxSize());
+        vaultAccessor.setUseHttp2(Boolean.TRUE.equals(config.getUseHttp2()));
+        started = System.nanoTime();
         vaultAccessor.init();
+        timing.setAuthenticationMillis(VaultTimingAction.Timing.since(started));
+        int cacheHits = vaultAccessor.getCacheHits();
+
+        // secrets read while the build was waiting in the queue, see VaultSecretPrefetcher
+        Map<String, TimedRead> queued = run == null ? Collections.emptyMap()
+            : VaultSecretPrefetcher.claim(run, config, credential, vaultAccessor.getPolicies());
+        long readsStarted = System.nanoTime();
+        Map<String, CompletableFuture<TimedRead>> prefetched = new HashMap<>(
+            prefetchVaultSecrets(vaultAccessor, config, prefixPath, envVars, vaultSecrets,
+                queued.keySet()));
+        queued.forEach((key, read) -> prefetched.put(key, CompletableFuture.completedFuture(read)));
 
         for (VaultSecret vaultSecret : vaultSecrets) {
             String path = prefixPath + envVars.expand(vaultSecret.getPath());
@@ -212,10 +445,15 @@ public class VaultAccessor implements Serializable {
             Integer engineVersion = Optional.ofNullable(vaultSecret.getEngineVersion())
                 .orElse(config.getEngineVersion());
             try {
-                LogicalResponse response = vaultAccessor.read(path, engineVersion);
+                TimedRead read = readPrefetched(prefetched, vaultAccessor, path, engineVersion);
+                LogicalResponse response = read.response;
+                timing.addRead(path, read.millis, response == null ? 0 : response.getRetries());
                 if (responseHasErrors(config, logger, path, response)) {
                     continue;
                 }
+                if (leaseRenewer != null && StringUtils.isNotEmpty(response.getLeaseId())) {
+                    leaseRenewer.track(vaultAccessor, config, response);
+                }
                 Map<String, String> values = response.getData();
                 for (VaultSecretValue value : vaultSecret.getSecretValues()) {
                     String vaultKey = value.getVaultKey();
@@ -238,11 +476,102 @@ public class VaultAccessor implements Serializable {
                 throw ex;
             }
         }
+        timing.setReadMillis(VaultTimingAction.Timing.since(readsStarted));
+        timing.setCacheHits(vaultAccessor.getCacheHits() - cacheHits);
 
         return overrides;
     }
 
+    /**
+     * Start reading the distinct secret paths concurrently when the configuration allows more
+     * than one read at a time. The responses are consumed in declaration order afterwards, so
+     * env var overrides and error handling behave exactly as with sequential reads.
+     *
+     * @return futures keyed by engine version and path, empty when reading sequentially
+     */
+    private static Map<String, CompletableFuture<TimedRead>> prefetchVaultSecrets(
+        VaultAccessor vaultAccessor, VaultConfiguration config, String prefixPath,
+        EnvVars envVars, List<VaultSecret> vaultSecrets, Set<String> alreadyRead) {
+        int maxConcurrentReads = Optional.ofNullable(config.getMaxConcurrentReads()).orElse(1);
+        if (maxConcurrentReads <= 1 || vaultSecrets.size() <= 1) {
+            return Collections.emptyMap();
+        }
+
+        // group by engine version: the engine version is set on the shared VaultConfig for
+        // every read, so only reads of the same engine version may run at the same time
+        Map<Integer, Set<String>> pathsByEngineVersion = new LinkedHashMap<>();
+        for (VaultSecret vaultSecret : vaultSecrets) {
+            String path = prefixPath + envVars.expand(vaultSecret.getPath());
+            Integer engineVersion = Optional.ofNullable(vaultSecret.getEngineVersion())
+                .orElse(config.getEngineVersion());
+            if (alreadyRead.contains(readKey(path, engineVersion))) {
+                continue;
+            }
+            pathsByEngineVersion.computeIfAbsent(engineVersion, k -> new LinkedHashSet<>())
+                .add(path);
+        }
+
+        Map<String, CompletableFuture<TimedRead>> prefetched = new HashMap<>();
+        int distinctPaths = pathsByEngineVersion.values().stream().mapToInt(Set::size).sum();
+        if (distinctPaths <= 1) {
+            return prefetched;
+        }
+        // acquired before submitting, so a build never holds more pool threads than it may use
+        Semaphore permits = new Semaphore(maxConcurrentReads);
+        for (Map.Entry<Integer, Set<String>> group : pathsByEngineVersion.entrySet()) {
+            Integer engineVersion = group.getKey();
+            List<CompletableFuture<TimedRead>> reads = new ArrayList<>();
+            for (String path : group.getValue()) {
+                permits.acquireUninterruptibly();
+                CompletableFuture<TimedRead> read;
+                try {
+                    // timed on the reading thread, the build only waits for the slowest read
+                    read = CompletableFuture.supplyAsync(
+                        () -> timedRead(vaultAccessor, path, engineVersion), READ_EXECUTOR);
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                read.whenComplete((response, t) -> permits.release());
+                prefetched.put(readKey(path, engineVersion), read);
+                reads.add(read);
+            }
+            // failures are reported when the response is consumed
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0]))
+                .exceptionally(t -> null)
+                .join();
+        }
+        return prefetched;
+    }
+
+    private static TimedRead readPrefetched(
+        Map<String, CompletableFuture<TimedRead>> prefetched, VaultAccessor vaultAccessor,
+        String path, Integer engineVersion) {
+        CompletableFuture<TimedRead> read = prefetched.get(readKey(path, engineVersion));
+        if (read == null) {
+            return timedRead(vaultAccessor, path, engineVersion);
+        }
+        return awaitRead(read);
+    }
+
+    static TimedRead timedRead(VaultAccessor vaultAccessor, String path,
+        Integer engineVersion) {
+        long readAt = System.currentTimeMillis();
+        long started = System.nanoTime();
+        LogicalResponse response = vaultAccessor.read(path, engineVersion);
+        return new TimedRead(response, VaultTimingAction.Timing.since(started), readAt);
+    }
+
+    static String readKey(String path, Integer engineVersion) {
+        return engineVersion + ":" + path;
+    }
+
     public static VaultCredential retrieveVaultCredentials(Run build, VaultConfiguration config) {
+        return retrieveVaultCredentials(build.getParent(), config);
+    }
+
+    public static VaultCredential retrieveVaultCredentials(Job<?, ?> job,
+        VaultConfiguration config) {
         if (Jenkins.getInstanceOrNull() != null) {
             String id = config.getVaultCredentialId();
             if (StringUtils.isBlank(id)) {
@@ -250,7 +579,7 @@ public class VaultAccessor implements Serializable {
                     "The credential id was not configured - please specify the credentials to use.");
             }
             List<VaultCredential> credentials = CredentialsProvider
-                .lookupCredentialsInItem(VaultCredential.class, build.getParent(), ACL.SYSTEM2,
+                .lookupCredentialsInItem(VaultCredential.class, job, ACL.SYSTEM2,
                     Collections.emptyList());
             VaultCredential credential = CredentialsMatchers
                 .firstOrNull(credentials, new IdMatcher(id));
@@ -301,15 +630,13 @@ public class VaultAccessor implements Serializable {
 
     public static VaultConfiguration pullAndMergeConfiguration(Run<?, ?> build,
         VaultConfiguration buildConfiguration) {
-        VaultConfiguration configuration = buildConfiguration;
-        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
-            if (configuration != null) {
-                configuration = configuration
-                    .mergeWithParent(resolver.forJob(build.getParent()));
-            } else {
-                configuration = resolver.forJob(build.getParent());
-            }
-        }
+        return pullAndMergeConfiguration(build.getParent(), buildConfiguration);
+    }
+
+    public static VaultConfiguration pullAndMergeConfiguration(Job<?, ?> job,
+        VaultConfiguration buildConfiguration) {
+        VaultConfiguration configuration = VaultConfigResolver.mergeForJob(buildConfiguration,
+            job);
         if (configuration == null) {
             throw new VaultPluginException(
                 "No configuration found - please configure the VaultPlugin.");
@@ -339,4 +666,21 @@ public class VaultAccessor implements Serializable {
         // collapse duplicate separators
         return cleaned.replaceAll("/{2,}", "/");
     }
+
+    /**
+     * A response, when it was read and how long the request for it took.
+     */
+    static final class TimedRead {
+
+        final LogicalResponse response;
+        final long millis;
+        // epoch millis, the lease duration of the response counts from here
+        final long readAt;
+
+        TimedRead(LogicalResponse response, long millis, long readAt) {
+            this.response = response;
+            this.millis = millis;
+            this.readAt = readAt;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.datapipe.jenkins.vault.configuration.GlobalVaultConfiguration;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Shared pool of initialized {@link VaultAccessor}s keyed by the effective configuration they
+ * were built from, so repeated credential lookups do not resolve configuration and
+ * re-authenticate on every call.
+ *
+ * <p>An accessor is initialized at most once per key, is replaced after
+ * {@code maxAgeSeconds} so that it picks up renewed tokens, and the whole pool is dropped when
+ * the global configuration, a folder or the system credentials are saved.
+ */
+public final class VaultAccessorPool {
+
+    private static final Logger LOGGER = Logger.getLogger(VaultAccessorPool.class.getName());
+
+    private static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(SystemProperties.getLong(
+        VaultAccessorPool.class.getName() + ".maxAgeSeconds", 60L));
+
+    private static final Map<List<?>, Entry> ACCESSORS = new ConcurrentHashMap<>();
+
+    private VaultAccessorPool() {
+    }
+
+    /**
+     * Get the pooled accessor for a configuration, initializing it if needed.
+     * @param key the effective configuration values the accessor is built from
+     * @param factory creates and initializes a new accessor for the key
+     * @return the pooled accessor
+     */
+    @NonNull
+    public static VaultAccessor get(@NonNull List<?> key,
+        @NonNull Supplier<VaultAccessor> factory) {
+        Entry entry = ACCESSORS.compute(key,
+            (k, existing) -> existing == null || existing.isExpired() ? new Entry() : existing);
+        try {
+            return entry.get(factory);
+        } catch (RuntimeException e) {
+            ACCESSORS.remove(key, entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the pooled accessor for a configuration, e.g. after its token was rejected.
+     * @param key the effective configuration values
+     */
+    public static void invalidate(@NonNull List<?> key) {
+        ACCESSORS.remove(key);
+    }
+
+    /**
+     * Drop every pooled accessor.
+     */
+    public static void invalidateAll() {
+        ACCESSORS.clear();
+    }
+
+    private static final class Entry {
+
+        private final long createdAt = System.nanoTime();
+        private VaultAccessor accessor;
+
+        synchronized VaultAccessor get(Supplier<VaultAccessor> factory) {
+            if (accessor == null) {
+                accessor = factory.get();
+            }
+            return accessor;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - createdAt > MAX_AGE_NANOS;
+        }
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof GlobalVaultConfiguration
+                || o instanceof AbstractFolder
+                || o instanceof SystemCredentialsProvider) {
+                LOGGER.log(Level.FINE, "Configuration changed, dropping pooled Vault accessors");
+                invalidateAll();
+            }
+        }
+    }
+}
@@ -111,19 +111,39 @@ public class VaultBindingStep extends Step {
             TaskListener listener = getContext().get(TaskListener.class);
             EnvVars envVars = getContext().get(EnvVars.class);
 
-            Map<String, String> overrides = VaultAccessor
-                .retrieveVaultSecrets(run, listener.getLogger(), envVars, vaultAccessor,
-                    step.getConfiguration(), step.getVaultSecrets());
+            LeaseRenewer leaseRenewer = LeaseRenewer.create();
+            VaultTimingAction.Timing timing = new VaultTimingAction.Timing("withVault");
+            Map<String, String> overrides;
+            try {
+                overrides = VaultAccessor
+                    .retrieveVaultSecrets(run, listener.getLogger(), envVars, vaultAccessor,
+                        step.getConfiguration(), step.getVaultSecrets(), leaseRenewer, timing);
+            } catch (RuntimeException e) {
+                leaseRenewer.finish(run, listener);
+                throw e;
+            }
+            String leaseRenewerId = null;
+            if (leaseRenewer.isEmpty()) {
+                leaseRenewer.finish(run, listener);
+            } else {
+                leaseRenewerId = leaseRenewer.getId();
+            }
 
             List<String> secretValues = new ArrayList<>(overrides.values());
 
+            long started = System.nanoTime();
+            MaskingConsoleLogFilter maskingFilter = new MaskingConsoleLogFilter(
+                run.getCharset().name(), secretValues);
+            timing.setMaskingMillis(VaultTimingAction.Timing.since(started));
+            VaultTimingAction.add(run, timing);
+
             getContext().newBodyInvoker()
                 .withContext(EnvironmentExpander.merge(getContext().get(EnvironmentExpander.class),
                     new VaultBindingStep.Overrider(overrides)))
                 .withContext(BodyInvoker
                     .mergeConsoleLogFilters(getContext().get(ConsoleLogFilter.class),
-                        new MaskingConsoleLogFilter(run.getCharset().name(), secretValues)))
-                .withCallback(new Callback())
+                        maskingFilter))
+                .withCallback(new Callback(leaseRenewerId))
                 .start();
         }
     }
@@ -156,9 +176,20 @@ public class VaultBindingStep extends Step {
 
     private static class Callback extends TailCall {
 
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final String leaseRenewerId;
+
+        Callback(String leaseRenewerId) {
+            this.leaseRenewerId = leaseRenewerId;
+        }
+
         @Override
         protected void finished(StepContext context) throws Exception {
-
+            // renew the leases of dynamic secrets while the body runs, revoke them afterwards
+            LeaseRenewer.finish(leaseRenewerId, context.get(Run.class),
+                context.get(TaskListener.class));
         }
     }
 
@@ -23,9 +23,7 @@
  */
 package com.datapipe.jenkins.vault;
 
-import com.datapipe.jenkins.vault.configuration.VaultConfigResolver;
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
-import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import com.datapipe.jenkins.vault.log.MaskingConsoleLogFilter;
 import com.datapipe.jenkins.vault.model.VaultSecret;
 import com.google.common.annotations.VisibleForTesting;
@@ -33,7 +31,6 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
-import hudson.ExtensionList;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.console.ConsoleLogFilter;
@@ -41,6 +38,8 @@ import hudson.model.AbstractProject;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.StreamTaskListener;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -53,6 +52,7 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
 
     private VaultConfiguration configuration;
     private List<VaultSecret> vaultSecrets;
+    private Boolean prefetchSecrets;
     private List<String> valuesToMask = new ArrayList<>();
     private transient VaultAccessor vaultAccessor = new VaultAccessor();
     protected transient PrintStream logger;
@@ -88,6 +88,18 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
         return this.configuration;
     }
 
+    public Boolean getPrefetchSecrets() {
+        return prefetchSecrets;
+    }
+
+    /**
+     * Read the secrets while the build waits in the queue, see {@link VaultSecretPrefetcher}.
+     */
+    @DataBoundSetter
+    public void setPrefetchSecrets(Boolean prefetchSecrets) {
+        this.prefetchSecrets = prefetchSecrets;
+    }
+
     @VisibleForTesting
     public void setVaultAccessor(VaultAccessor vaultAccessor) {
         this.vaultAccessor = vaultAccessor;
@@ -95,29 +107,44 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
 
     protected void provideEnvironmentVariablesFromVault(Context context, Run build,
         EnvVars envVars) {
-        Map<String, String> overrides = VaultAccessor
-            .retrieveVaultSecrets(build, logger, envVars, vaultAccessor,
-                getConfiguration(), getVaultSecrets());
+        LeaseRenewer leaseRenewer = LeaseRenewer.create();
+        VaultTimingAction.Timing timing = new VaultTimingAction.Timing("VaultBuildWrapper");
+        Map<String, String> overrides;
+        try {
+            overrides = VaultAccessor
+                .retrieveVaultSecrets(build, logger, envVars, vaultAccessor,
+                    getConfiguration(), getVaultSecrets(), leaseRenewer, timing);
+        } catch (RuntimeException e) {
+            finishQuietly(leaseRenewer, build);
+            throw e;
+        }
+        if (leaseRenewer.isEmpty()) {
+            finishQuietly(leaseRenewer, build);
+        } else {
+            context.setDisposer(new LeaseRenewer.Disposer(leaseRenewer.getId()));
+        }
 
+        long started = System.nanoTime();
         for (Map.Entry<String, String> secret : overrides.entrySet()) {
             valuesToMask.add(secret.getValue());
             context.env(secret.getKey(), secret.getValue());
         }
+        timing.setMaskingMillis(VaultTimingAction.Timing.since(started));
+        VaultTimingAction.add(build, timing);
     }
 
-    private void pullAndMergeConfiguration(Run<?, ?> build) {
-        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
-            if (configuration != null) {
-                configuration = configuration.mergeWithParent(resolver.forJob(build.getParent()));
-            } else {
-                configuration = resolver.forJob(build.getParent());
-            }
-        }
-        if (configuration == null) {
-            throw new VaultPluginException(
-                "No configuration found - please configure the VaultPlugin.");
+    private void finishQuietly(LeaseRenewer leaseRenewer, Run<?, ?> build) {
+        try {
+            leaseRenewer.finish(build, new StreamTaskListener(logger, build.getCharset()));
+        } catch (IOException e) {
+            logger.println("Could not revoke Vault leases: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        configuration.fixDefaults();
+    }
+
+    private void pullAndMergeConfiguration(Run<?, ?> build) {
+        configuration = VaultAccessor.pullAndMergeConfiguration(build, configuration);
     }
 
     @Override
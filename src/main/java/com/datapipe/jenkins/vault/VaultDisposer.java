@@ -2,20 +2,48 @@ package com.datapipe.jenkins.vault;
 
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import io.github.jopenlibs.vault.VaultConfig;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import jenkins.tasks.SimpleBuildWrapper;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
 
 /**
  * Created by adamtistler on 8/29/17.
  */
 public class VaultDisposer extends SimpleBuildWrapper.Disposer {
 
+    /**
+     * Maximum number of leases revoked at the same time when a build ends.
+     */
+    private static final int MAX_CONCURRENT_REVOCATIONS = SystemProperties.getInteger(
+        VaultDisposer.class.getName() + ".maxConcurrentRevocations", 8);
+
+    /**
+     * Hand leases over to the {@link LeaseRevocationQueue} instead of revoking them before the
+     * build ends.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static boolean ASYNC_REVOCATION = SystemProperties.getBoolean(
+        VaultDisposer.class.getName() + ".asyncRevocation", true);
+
     private final List<String> leaseIds;
     private final VaultConfiguration vaultConfiguration;
     private final VaultCredential vaultCredential;
@@ -30,12 +58,85 @@ public class VaultDisposer extends SimpleBuildWrapper.Disposer {
     @Override
     public void tearDown(final Run<?, ?> build, final FilePath workspace, final Launcher launcher,
         final TaskListener listener) throws IOException, InterruptedException {
-        VaultConfig vaultConfig = new VaultConfig().address(vaultConfiguration.getVaultUrl());
-        VaultAccessor vaultAccessor = new VaultAccessor(vaultConfig, vaultCredential).init();
+        Set<String> leases = new LinkedHashSet<>();
         for (String leaseId : leaseIds) {
-            if (leaseId != null && !leaseId.isEmpty()) {
-                vaultAccessor.revoke(leaseId);
+            if (StringUtils.isNotEmpty(leaseId)) {
+                leases.add(leaseId);
+            }
+        }
+        if (leases.isEmpty()) {
+            return;
+        }
+
+        PrintStream logger = listener.getLogger();
+        if (ASYNC_REVOCATION) {
+            LeaseRevocationQueue.get().add(vaultConfiguration, vaultCredential,
+                build == null ? null : build.getParent().getFullName(), leases);
+            logger.printf("Queued revocation of %d Vault leases%n", leases.size());
+            return;
+        }
+
+        VaultAccessor vaultAccessor = newVaultAccessor(vaultConfiguration, vaultCredential);
+        Map<String, String> failures = revokeAll(vaultAccessor, leases);
+        logger.printf("Revoked %d of %d Vault leases%n", leases.size() - failures.size(),
+            leases.size());
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            logger.printf("Failed to revoke Vault lease %s: %s%n", failure.getKey(),
+                failure.getValue());
+        }
+        if (!failures.isEmpty()) {
+            throw new VaultPluginException(
+                "could not revoke " + failures.size() + " of " + leases.size() + " vault leases");
+        }
+    }
+
+    static VaultAccessor newVaultAccessor(VaultConfiguration vaultConfiguration,
+        VaultCredential vaultCredential) {
+        VaultAccessor vaultAccessor = new VaultAccessor(vaultConfiguration.getVaultConfig(),
+            vaultCredential);
+        vaultAccessor.setMaxRetries(vaultConfiguration.getMaxRetries());
+        vaultAccessor.setRetryIntervalMilliseconds(
+            vaultConfiguration.getRetryIntervalMilliseconds());
+        return vaultAccessor.init();
+    }
+
+    /**
+     * Revoke leases concurrently. A failed revocation does not stop the others.
+     *
+     * @return the error message for each lease that could not be revoked
+     */
+    static Map<String, String> revokeAll(VaultAccessor vaultAccessor, Set<String> leases)
+        throws InterruptedException {
+        Map<String, CompletableFuture<String>> revocations = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(MAX_CONCURRENT_REVOCATIONS, leases.size())),
+            new NamingThreadFactory(new DaemonThreadFactory(), "VaultDisposer.revoke"));
+        try {
+            for (String leaseId : leases) {
+                revocations.put(leaseId, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        vaultAccessor.revoke(leaseId);
+                        return null;
+                    } catch (RuntimeException e) {
+                        return StringUtils.defaultIfEmpty(e.getMessage(), e.toString());
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(revocations.values().toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            // revocations catch their own failures
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> revocation : revocations.entrySet()) {
+            String error = revocation.getValue().join();
+            if (error != null) {
+                failures.put(revocation.getKey(), error);
             }
         }
+        return failures;
     }
 }
@@ -0,0 +1,245 @@
+package com.datapipe.jenkins.vault;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Controller-wide, opt-in cache of secrets read from Vault.
+ *
+ * <p>Entries are grouped per Vault address, namespace and token. The token is the identity that
+ * actually authenticated: credential IDs are not unique across folders, and the policies of a
+ * child token are part of the token. Each group is an LRU map
+ * bounded by the size configured on the {@link com.datapipe.jenkins.vault.configuration.VaultConfiguration}
+ * that reads through it. An entry expires after the configured TTL, or earlier when Vault
+ * reported a shorter {@code lease_duration} for the secret. Responses carrying a lease ID are
+ * never cached, since every build needs its own lease.
+ */
+public final class VaultSecretCache {
+
+    private static final VaultSecretCache INSTANCE = new VaultSecretCache(System::nanoTime);
+
+    private final Map<List<String>, Region> regions = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    VaultSecretCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static VaultSecretCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Look up a cached response.
+     * @param key cache key
+     * @return the cached response or null if absent or expired
+     */
+    @CheckForNull
+    public LogicalResponse get(@NonNull Key key) {
+        Region region = regions.get(key.region());
+        if (region == null) {
+            return null;
+        }
+        return region.get(key, clock.getAsLong());
+    }
+
+    /**
+     * Cache a successful response.
+     * @param key cache key
+     * @param response response to cache
+     * @param ttlSeconds maximum time to live in seconds
+     * @param maxSize maximum number of entries for the key's address, namespace and credential
+     */
+    public void put(@NonNull Key key, @NonNull LogicalResponse response, int ttlSeconds,
+        int maxSize) {
+        if (ttlSeconds <= 0 || maxSize <= 0 || !isCacheable(response)) {
+            return;
+        }
+        long ttl = ttlSeconds;
+        Long leaseDuration = response.getLeaseDuration();
+        if (leaseDuration != null && leaseDuration > 0) {
+            ttl = Math.min(ttl, leaseDuration);
+        }
+        long now = clock.getAsLong();
+        Entry entry = new Entry(response, now + TimeUnit.SECONDS.toNanos(ttl));
+        List<String> regionKey = key.region();
+        if (!regions.containsKey(regionKey)) {
+            // tokens are replaced when they expire, drop the groups of tokens no longer used
+            for (List<String> other : regions.keySet()) {
+                regions.computeIfPresent(other, (k, r) -> r.purge(now) ? null : r);
+            }
+        }
+        // created and filled in one step, so that a concurrent purge never drops a group
+        // between the two, nor a put lands in a group that was just dropped
+        regions.compute(regionKey, (k, r) -> {
+            Region region = r == null ? new Region() : r;
+            region.put(key, entry, maxSize);
+            return region;
+        });
+    }
+
+    /**
+     * Identify the token a read is made with, without keeping the token itself.
+     * @param token the Vault token, null when Vault Agent authenticates
+     * @return a digest of the token
+     */
+    @NonNull
+    public static String identityOf(@CheckForNull String token) {
+        if (token == null) {
+            return "";
+        }
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-256")
+                .digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Drop every cached response.
+     */
+    public void invalidateAll() {
+        regions.clear();
+    }
+
+    int size() {
+        return regions.values().stream().mapToInt(Region::size).sum();
+    }
+
+    private static boolean isCacheable(LogicalResponse response) {
+        RestResponse restResponse = response.getRestResponse();
+        return restResponse != null
+            && restResponse.getStatus() == 200
+            && StringUtils.isEmpty(response.getLeaseId());
+    }
+
+    /**
+     * Identifies a secret read: Vault address, namespace, token, engine version, prefix path
+     * depth and normalized path.
+     */
+    public static final class Key {
+
+        private final String address;
+        private final String namespace;
+        private final String identity;
+        private final Integer engineVersion;
+        private final int prefixPathDepth;
+        private final String path;
+
+        /**
+         * @param identity the token the read is made with, see {@link #identityOf(String)}
+         */
+        public Key(@CheckForNull String address, @CheckForNull String namespace,
+            @NonNull String identity, @CheckForNull Integer engineVersion, int prefixPathDepth,
+            @NonNull String path) {
+            this.address = address;
+            this.namespace = namespace;
+            this.identity = identity;
+            this.engineVersion = engineVersion;
+            this.prefixPathDepth = prefixPathDepth;
+            this.path = path;
+        }
+
+        List<String> region() {
+            return Arrays.asList(address, namespace, identity);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(address, key.address)
+                && Objects.equals(namespace, key.namespace)
+                && Objects.equals(identity, key.identity)
+                && Objects.equals(engineVersion, key.engineVersion)
+                && prefixPathDepth == key.prefixPathDepth
+                && Objects.equals(path, key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(address, namespace, identity, engineVersion, prefixPathDepth,
+                path);
+        }
+    }
+
+    private static final class Entry {
+
+        private final LogicalResponse response;
+        private final long expiresAt;
+
+        Entry(LogicalResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Region {
+
+        private int maxSize = Integer.MAX_VALUE;
+
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        synchronized LogicalResponse get(Key key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.response;
+        }
+
+        synchronized void put(Key key, Entry entry, int maxSize) {
+            this.maxSize = maxSize;
+            entries.put(key, entry);
+            // the limit may have been lowered by a more restrictive configuration
+            while (entries.size() > maxSize) {
+                Key eldest = entries.keySet().iterator().next();
+                entries.remove(eldest);
+            }
+        }
+
+        /**
+         * Remove the expired entries.
+         * @return true if no entry is left
+         */
+        synchronized boolean purge(long now) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().expiresAt >= 0) {
+                    it.remove();
+                }
+            }
+            return entries.isEmpty();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
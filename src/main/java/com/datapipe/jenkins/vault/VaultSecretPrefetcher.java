@@ -0,0 +1,295 @@
+package com.datapipe.jenkins.vault;
+
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.queue.QueueListener;
+import hudson.model.queue.Tasks;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Reads the secrets declared by a {@link VaultBuildWrapper} with {@code prefetchSecrets} while
+ * the build waits in the queue, so that the build does not wait for Vault when it starts.
+ *
+ * <p>Prefetched responses are only handed to the build created from the same queue item, and
+ * only if its effective configuration, credential and policies are still the ones the secrets
+ * were read with. Responses that are not claimed within {@code ttlSeconds} are dropped, and
+ * their leases revoked. So are responses whose lease has mostly run out while the item waited,
+ * the build reads those again.
+ */
+@Extension
+public class VaultSecretPrefetcher extends QueueListener {
+
+    private static final Logger LOGGER = Logger.getLogger(VaultSecretPrefetcher.class.getName());
+
+    private static final long TTL = TimeUnit.SECONDS.toMillis(
+        SystemProperties.getLong(VaultSecretPrefetcher.class.getName() + ".ttlSeconds", 300L));
+
+    // queue item id to prefetch
+    private static final Map<Long, Prefetch> PREFETCHES = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem wi) {
+        start(wi);
+    }
+
+    @Override
+    public void onEnterBuildable(Queue.BuildableItem bi) {
+        start(bi);
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem li) {
+        if (li.isCancelled()) {
+            discard(li.getId());
+        }
+    }
+
+    private static void start(Queue.Item item) {
+        if (!(item.task instanceof Job) || !(item.task instanceof BuildableItemWithBuildWrappers)) {
+            return;
+        }
+        VaultBuildWrapper wrapper = ((BuildableItemWithBuildWrappers) item.task)
+            .getBuildWrappersList().get(VaultBuildWrapper.class);
+        if (wrapper == null || !Boolean.TRUE.equals(wrapper.getPrefetchSecrets())
+            || wrapper.getVaultSecrets() == null || wrapper.getVaultSecrets().isEmpty()) {
+            return;
+        }
+        Job<?, ?> job = (Job<?, ?>) item.task;
+        long id = item.getId();
+        Prefetch prefetch = new Prefetch(job.getFullName());
+        if (PREFETCHES.putIfAbsent(id, prefetch) != null) {
+            return;
+        }
+        Authentication authentication = Tasks.getAuthenticationOf2(item.task);
+        Timer.get().submit(() -> {
+            try (ACLContext ignored = ACL.as2(authentication)) {
+                prefetch.result.complete(read(job, wrapper));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not prefetch Vault secrets of " + job, e);
+                prefetch.result.complete(null);
+            }
+        });
+        Timer.get().schedule(() -> {
+            if (PREFETCHES.remove(id, prefetch)) {
+                LOGGER.log(Level.FINE, "Dropping unused Vault secrets prefetched for {0}",
+                    prefetch.jobName);
+                prefetch.discard();
+            }
+        }, TTL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the secrets of a wrapper the way {@link VaultAccessor#retrieveVaultSecrets} does.
+     * Paths depending on build variables are left to the build.
+     */
+    @CheckForNull
+    static Result read(Job<?, ?> job, VaultBuildWrapper wrapper) {
+        VaultConfiguration config = VaultAccessor.pullAndMergeConfiguration(job,
+            wrapper.getConfiguration());
+        if (StringUtils.isBlank(config.getVaultUrl())
+            || StringUtils.contains(config.getPrefixPath(), '$')) {
+            return null;
+        }
+        VaultCredential credential = config.getVaultCredential();
+        if (credential == null) {
+            credential = VaultAccessor.retrieveVaultCredentials(job, config);
+        }
+        EnvVars envVars = new EnvVars("JOB_NAME", job.getFullName(), "JOB_BASE_NAME",
+            job.getName());
+        String prefixPath = StringUtils.isBlank(config.getPrefixPath())
+            ? "" : Util.ensureEndsWith(config.getPrefixPath(), "/");
+
+        VaultAccessor vaultAccessor = new VaultAccessor(config.getVaultConfig(), credential);
+        vaultAccessor.setPolicies(VaultAccessor.generatePolicies(config.getPolicies(), envVars));
+        vaultAccessor.setMaxRetries(config.getMaxRetries());
+        vaultAccessor.setRetryIntervalMilliseconds(config.getRetryIntervalMilliseconds());
+        vaultAccessor.setCacheTtl(config.getEffectiveCacheTtl());
+        vaultAccessor.setCacheMaxSize(config.getCacheMaxSize());
+        vaultAccessor.setUseHttp2(Boolean.TRUE.equals(config.getUseHttp2()));
+        vaultAccessor.init();
+
+        Map<String, VaultAccessor.TimedRead> responses = new LinkedHashMap<>();
+        for (VaultSecret vaultSecret : wrapper.getVaultSecrets()) {
+            if (StringUtils.contains(vaultSecret.getPath(), '$')) {
+                continue;
+            }
+            String path = prefixPath + vaultSecret.getPath();
+            Integer engineVersion = Optional.ofNullable(vaultSecret.getEngineVersion())
+                .orElse(config.getEngineVersion());
+            String key = VaultAccessor.readKey(path, engineVersion);
+            if (responses.containsKey(key)) {
+                continue;
+            }
+            try {
+                responses.put(key, VaultAccessor.timedRead(vaultAccessor, path, engineVersion));
+            } catch (VaultPluginException e) {
+                // the build reads it again and reports the error
+                LOGGER.log(Level.FINE, "Could not prefetch Vault secret " + path, e);
+            }
+        }
+        return new Result(key(config, credential, vaultAccessor.getPolicies()), config,
+            credential, responses);
+    }
+
+    /**
+     * Take the secrets prefetched for the queue item a build was created from.
+     *
+     * @param run the build
+     * @param config the effective configuration of the build
+     * @param credential the credential of the build
+     * @param policies the policies of the build
+     * @return the responses and their read times keyed like {@link VaultAccessor#readKey},
+     *     empty if nothing usable was prefetched
+     */
+    @NonNull
+    static Map<String, VaultAccessor.TimedRead> claim(@NonNull Run<?, ?> run,
+        @NonNull VaultConfiguration config, VaultCredential credential, List<String> policies) {
+        Prefetch prefetch = PREFETCHES.remove(run.getQueueId());
+        if (prefetch == null) {
+            return Collections.emptyMap();
+        }
+        if (!prefetch.jobName.equals(run.getParent().getFullName())) {
+            prefetch.discard();
+            return Collections.emptyMap();
+        }
+        Result result = prefetch.result.join();
+        if (result == null) {
+            return Collections.emptyMap();
+        }
+        if (!result.key.equals(key(config, credential, policies))) {
+            prefetch.discard();
+            return Collections.emptyMap();
+        }
+        Map<String, VaultAccessor.TimedRead> usable = new LinkedHashMap<>();
+        List<String> expiring = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        result.responses.forEach((key, read) -> {
+            if (isExpiring(read, now)) {
+                expiring.add(read.response.getLeaseId());
+            } else {
+                usable.put(key, read);
+            }
+        });
+        revoke(result, prefetch.jobName, expiring);
+        return usable;
+    }
+
+    /**
+     * @return whether two thirds of the lease of the response have elapsed, the point where
+     *     {@link TokenRenewal} renews leases by default
+     */
+    static boolean isExpiring(VaultAccessor.TimedRead read, long now) {
+        if (StringUtils.isEmpty(read.response.getLeaseId())) {
+            return false;
+        }
+        long leaseMillis = TimeUnit.SECONDS.toMillis(
+            Optional.ofNullable(read.response.getLeaseDuration()).orElse(0L));
+        return now - read.readAt >= leaseMillis * 2 / 3;
+    }
+
+    private static void revoke(Result result, String jobName, List<String> leaseIds) {
+        if (leaseIds.isEmpty()) {
+            return;
+        }
+        try {
+            LeaseRevocationQueue.get().add(result.configuration, result.credential, jobName,
+                leaseIds);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not queue revocation of prefetched Vault leases "
+                + leaseIds, e);
+        }
+    }
+
+    private static void discard(long id) {
+        Prefetch prefetch = PREFETCHES.remove(id);
+        if (prefetch != null) {
+            prefetch.discard();
+        }
+    }
+
+    private static List<Object> key(VaultConfiguration config, VaultCredential credential,
+        List<String> policies) {
+        return Arrays.asList(config.getVaultUrl(), config.getVaultNamespace(),
+            config.getPrefixPath(), config.getSkipSslVerification(), config.getUseHttp2(),
+            credential == null ? null : credential.getId(), policies);
+    }
+
+    /**
+     * Secrets being read for one queue item.
+     */
+    private static final class Prefetch {
+
+        private final String jobName;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+        Prefetch(String jobName) {
+            this.jobName = jobName;
+        }
+
+        /**
+         * Revoke the leases of responses that no build will use.
+         */
+        void discard() {
+            result.thenAccept(r -> {
+                if (r == null) {
+                    return;
+                }
+                List<String> leaseIds = new ArrayList<>();
+                for (VaultAccessor.TimedRead read : r.responses.values()) {
+                    if (StringUtils.isNotEmpty(read.response.getLeaseId())) {
+                        leaseIds.add(read.response.getLeaseId());
+                    }
+                }
+                revoke(r, jobName, leaseIds);
+            });
+        }
+    }
+
+    /**
+     * Prefetched responses and what they were read with.
+     */
+    static final class Result {
+
+        private final List<Object> key;
+        private final VaultConfiguration configuration;
+        private final VaultCredential credential;
+        private final Map<String, VaultAccessor.TimedRead> responses;
+
+        Result(List<Object> key, VaultConfiguration configuration, VaultCredential credential,
+            Map<String, VaultAccessor.TimedRead> responses) {
+            this.key = key;
+            this.configuration = configuration;
+            this.credential = credential;
+            this.responses = responses;
+        }
+    }
+}
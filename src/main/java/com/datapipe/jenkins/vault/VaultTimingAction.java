@@ -0,0 +1,253 @@
+package com.datapipe.jenkins.vault;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Api;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * How long the Vault steps of a build took, one {@link Timing} per {@code withVault} block or
+ * {@link VaultBuildWrapper}. Shown on the build page and exported at
+ * {@code vault-timings/api/json}.
+ */
+@ExportedBean
+public class VaultTimingAction implements RunAction2 {
+
+    // guarded by this
+    private final List<Timing> timings = new ArrayList<>();
+
+    private transient Run<?, ?> run;
+
+    /**
+     * Attach a timing to a build, adding the action if needed.
+     * @param run the build
+     * @param timing the timing
+     */
+    public static void add(@NonNull Run<?, ?> run, @NonNull Timing timing) {
+        VaultTimingAction action;
+        synchronized (VaultTimingAction.class) {
+            action = run.getAction(VaultTimingAction.class);
+            if (action == null) {
+                action = new VaultTimingAction();
+                run.addAction(action);
+            }
+        }
+        synchronized (action) {
+            action.timings.add(timing);
+        }
+    }
+
+    @Exported
+    public synchronized List<Timing> getTimings() {
+        return Collections.unmodifiableList(new ArrayList<>(timings));
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        // shown in the build summary, the page is reachable by URL
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Vault Timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "vault-timings";
+    }
+
+    /**
+     * The steps of one {@code withVault} block or build wrapper, in milliseconds.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Timing {
+
+        private final String source;
+        private long configurationMillis;
+        private long credentialsMillis;
+        private long authenticationMillis;
+        private long maskingMillis;
+        private long readMillis;
+        private int cacheHits;
+        private int retries;
+        private final List<Read> reads = new ArrayList<>();
+
+        /**
+         * @param source what read the secrets, e.g. {@code withVault}
+         */
+        public Timing(@NonNull String source) {
+            this.source = source;
+        }
+
+        static long since(long startNanos) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        @Exported
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return time spent merging the configuration with folders and the global one
+         */
+        @Exported
+        public long getConfigurationMillis() {
+            return configurationMillis;
+        }
+
+        void setConfigurationMillis(long configurationMillis) {
+            this.configurationMillis = configurationMillis;
+        }
+
+        /**
+         * @return time spent looking up the Vault credential
+         */
+        @Exported
+        public long getCredentialsMillis() {
+            return credentialsMillis;
+        }
+
+        void setCredentialsMillis(long credentialsMillis) {
+            this.credentialsMillis = credentialsMillis;
+        }
+
+        /**
+         * @return time spent logging in, or taking a cached token
+         */
+        @Exported
+        public long getAuthenticationMillis() {
+            return authenticationMillis;
+        }
+
+        void setAuthenticationMillis(long authenticationMillis) {
+            this.authenticationMillis = authenticationMillis;
+        }
+
+        /**
+         * @return time spent setting up the masking of the secret values
+         */
+        @Exported
+        public long getMaskingMillis() {
+            return maskingMillis;
+        }
+
+        void setMaskingMillis(long maskingMillis) {
+            this.maskingMillis = maskingMillis;
+        }
+
+        /**
+         * @return time the build spent reading secrets, less than the sum of the reads when they
+         *     run concurrently or were read while the build was queued
+         */
+        @Exported
+        public long getReadMillis() {
+            return readMillis;
+        }
+
+        void setReadMillis(long readMillis) {
+            this.readMillis = readMillis;
+        }
+
+        /**
+         * @return reads served from the controller-wide secret cache
+         */
+        @Exported
+        public int getCacheHits() {
+            return cacheHits;
+        }
+
+        void setCacheHits(int cacheHits) {
+            this.cacheHits = cacheHits;
+        }
+
+        /**
+         * @return requests retried by the Vault client
+         */
+        @Exported
+        public int getRetries() {
+            return retries;
+        }
+
+        @Exported
+        public synchronized List<Read> getReads() {
+            return Collections.unmodifiableList(new ArrayList<>(reads));
+        }
+
+        synchronized void addRead(String path, long millis, int retries) {
+            reads.add(new Read(path, millis));
+            this.retries += retries;
+        }
+
+        /**
+         * @return the sum of all steps
+         */
+        @Exported
+        public synchronized long getTotalMillis() {
+            long total = configurationMillis + credentialsMillis + authenticationMillis
+                + maskingMillis + readMillis;
+            if (readMillis == 0) {
+                // recorded before the read time was tracked separately
+                for (Read read : reads) {
+                    total += read.millis;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * The read of one secret path and how long the request to Vault took. With concurrent reads
+     * it is measured on the thread doing the read, for secrets read while the build was queued it
+     * is the time that read took.
+     */
+    @ExportedBean(defaultVisibility = 3)
+    public static final class Read {
+
+        private final String path;
+        private final long millis;
+
+        Read(String path, long millis) {
+            this.path = path;
+            this.millis = millis;
+        }
+
+        @Exported
+        public String getPath() {
+            return path;
+        }
+
+        @Exported
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
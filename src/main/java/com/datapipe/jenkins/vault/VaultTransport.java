@@ -0,0 +1,249 @@
+package com.datapipe.jenkins.vault;
+
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.jopenlibs.vault.SslConfig;
+import io.github.jopenlibs.vault.VaultConfig;
+import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.api.Logical;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Connection settings shared by every Vault client the plugin creates.
+ *
+ * <p>Clients built here share one {@link SslConfig}, and therefore one {@code SSLContext} and
+ * its TLS session cache, per {@code skipSslVerification} value of a {@link VaultConfiguration},
+ * instead of building a new one for every client. The plugin does not pool connections itself:
+ * the vault-java-driver talks to Vault through {@code HttpURLConnection}, whose idle connections
+ * are kept by the JVM wide keep-alive cache, sized with the {@code http.maxConnections} system
+ * property.
+ *
+ * <p>Configurations with {@link VaultConfiguration#getUseHttp2()} read secrets through
+ * {@link #read} instead, with a {@link HttpClient} that negotiates HTTP/2 and multiplexes
+ * concurrent reads over a few connections per Vault server.
+ */
+public final class VaultTransport {
+
+    private static final Map<Boolean, SslConfig> SSL_CONFIGS = new ConcurrentHashMap<>();
+
+    private static final Map<List<Object>, HttpClient> HTTP_CLIENTS = new ConcurrentHashMap<>();
+
+    private VaultTransport() {
+    }
+
+    /**
+     * Create a client configuration for a Vault server.
+     * @param address the Vault URL
+     * @param skipSslVerification whether the server certificate is not verified
+     * @return the configuration using the shared TLS settings
+     */
+    @NonNull
+    public static VaultConfig newVaultConfig(@CheckForNull String address,
+        @CheckForNull Boolean skipSslVerification) {
+        return new VaultConfig().address(address).sslConfig(getSslConfig(skipSslVerification));
+    }
+
+    /**
+     * Copy a client configuration with another token, so that background work does not change
+     * the token of a configuration in use.
+     * @param config the configuration to copy
+     * @param token the token of the copy
+     * @return the built copy
+     * @throws VaultException if the copy could not be built
+     */
+    @NonNull
+    public static VaultConfig copyConfig(@NonNull VaultConfig config, String token)
+        throws VaultException {
+        VaultConfig copy = new VaultConfig()
+            .address(config.getAddress())
+            .openTimeout(config.getOpenTimeout())
+            .readTimeout(config.getReadTimeout())
+            .prefixPathDepth(config.getPrefixPathDepth())
+            .token(token);
+        if (config.getSslConfig() != null) {
+            copy.sslConfig(config.getSslConfig());
+        }
+        if (StringUtils.isNotEmpty(config.getNameSpace())) {
+            copy.nameSpace(config.getNameSpace());
+        }
+        if (config.getGlobalEngineVersion() != null) {
+            copy.engineVersion(config.getGlobalEngineVersion());
+        }
+        return copy.build();
+    }
+
+    /**
+     * Get the shared TLS settings.
+     * @param skipSslVerification whether the server certificate is not verified
+     * @return the built TLS settings
+     */
+    @NonNull
+    public static SslConfig getSslConfig(@CheckForNull Boolean skipSslVerification) {
+        boolean verify = !Boolean.TRUE.equals(skipSslVerification);
+        SslConfig sslConfig = SSL_CONFIGS.get(verify);
+        if (sslConfig == null) {
+            try {
+                sslConfig = new SslConfig().verify(verify).build();
+            } catch (VaultException e) {
+                throw new VaultPluginException("Could not set up SslConfig.", e);
+            }
+            SslConfig existing = SSL_CONFIGS.putIfAbsent(verify, sslConfig);
+            if (existing != null) {
+                sslConfig = existing;
+            }
+        }
+        return sslConfig;
+    }
+
+    /**
+     * Whether {@link #read} can be used for a client configuration. The JDK client cannot skip
+     * hostname verification per client, so configurations that skip SSL verification keep using
+     * the driver.
+     * @param config the client configuration
+     * @return true if the HTTP/2 client can read with this configuration
+     */
+    public static boolean supportsHttp2(@NonNull VaultConfig config) {
+        return config.getSslConfig() == null || config.getSslConfig().isVerify();
+    }
+
+    /**
+     * Read a secret like {@code Vault.logical().read(path)} does, over HTTP/2 when the server
+     * supports it. Responses with a 4xx status are returned, other failures are retried.
+     * @param config the client configuration, including the token
+     * @param path the secret path
+     * @param engineVersion the K/V engine version
+     * @param maxRetries the number of retries
+     * @param retryIntervalMilliseconds the time between retries
+     * @return the response
+     * @throws VaultException if the read still fails after the retries
+     */
+    @NonNull
+    public static LogicalResponse read(@NonNull VaultConfig config, @NonNull String path,
+        Integer engineVersion, int maxRetries, int retryIntervalMilliseconds)
+        throws VaultException {
+        boolean v2 = Integer.valueOf(2).equals(engineVersion);
+        Logical.logicalOperations operation = v2
+            ? Logical.logicalOperations.readV2 : Logical.logicalOperations.readV1;
+        String apiPath = v2 ? addDataSegment(path, config.getPrefixPathDepth()) : path;
+        return send(config, apiPath, operation, maxRetries, retryIntervalMilliseconds);
+    }
+
+    /**
+     * Read the metadata of a K/V version 2 secret, e.g. its {@code current_version}, without
+     * reading the secret itself.
+     * @param config the client configuration, including the token
+     * @param path the secret path
+     * @param maxRetries the number of retries
+     * @param retryIntervalMilliseconds the time between retries
+     * @return the response, with the metadata as data
+     * @throws VaultException if the read still fails after the retries
+     */
+    @NonNull
+    public static LogicalResponse readMetadata(@NonNull VaultConfig config, @NonNull String path,
+        int maxRetries, int retryIntervalMilliseconds) throws VaultException {
+        String apiPath = addSegment(path, config.getPrefixPathDepth(), "metadata");
+        return send(config, apiPath, Logical.logicalOperations.readV1, maxRetries,
+            retryIntervalMilliseconds);
+    }
+
+    private static LogicalResponse send(VaultConfig config, String apiPath,
+        Logical.logicalOperations operation, int maxRetries, int retryIntervalMilliseconds)
+        throws VaultException {
+        HttpRequest.Builder request = HttpRequest
+            .newBuilder(URI.create(config.getAddress() + "/v1/" + apiPath))
+            .header("X-Vault-Request", "true")
+            .GET();
+        if (StringUtils.isNotEmpty(config.getToken())) {
+            request.header("X-Vault-Token", config.getToken());
+        }
+        if (StringUtils.isNotEmpty(config.getNameSpace())) {
+            request.header("X-Vault-Namespace", config.getNameSpace());
+        }
+        if (config.getReadTimeout() != null && config.getReadTimeout() > 0) {
+            request.timeout(Duration.ofSeconds(config.getReadTimeout()));
+        }
+        HttpClient client = getHttpClient(config);
+
+        int retryCount = 0;
+        while (true) {
+            try {
+                HttpResponse<byte[]> response = client.send(request.build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+                int status = response.statusCode();
+                if (status == 200 || status >= 400 && status < 500) {
+                    RestResponse restResponse = new RestResponse(status,
+                        response.headers().firstValue("Content-Type").orElse(null),
+                        response.body());
+                    return new LogicalResponse(restResponse, retryCount, operation);
+                }
+                throw new VaultException("Vault responded with HTTP status code: " + status
+                    + "\nResponse body: " + new String(response.body(), StandardCharsets.UTF_8),
+                    status);
+            } catch (IOException | VaultException e) {
+                if (retryCount >= maxRetries) {
+                    throw e instanceof VaultException ? (VaultException) e : new VaultException(e);
+                }
+                retryCount++;
+                try {
+                    Thread.sleep(retryIntervalMilliseconds);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new VaultException(ie);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new VaultException(e);
+            }
+        }
+    }
+
+    private static HttpClient getHttpClient(VaultConfig config) {
+        SslConfig sslConfig = config.getSslConfig();
+        Integer openTimeout = config.getOpenTimeout();
+        // SslConfig instances are shared, see getSslConfig, so identity is the right key
+        List<Object> key = Arrays.asList(sslConfig, openTimeout);
+        return HTTP_CLIENTS.computeIfAbsent(key, k -> {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER);
+            if (openTimeout != null && openTimeout > 0) {
+                builder.connectTimeout(Duration.ofSeconds(openTimeout));
+            }
+            if (sslConfig != null && sslConfig.getSslContext() != null) {
+                builder.sslContext(sslConfig.getSslContext());
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * Insert the {@code data} segment K/V version 2 expects after the mount path, e.g.
+     * {@code secret/app} becomes {@code secret/data/app}.
+     */
+    static String addDataSegment(String path, int prefixPathDepth) {
+        return addSegment(path, prefixPathDepth, "data");
+    }
+
+    private static String addSegment(String path, int prefixPathDepth, String segment) {
+        List<String> segments = new ArrayList<>(Arrays.asList(path.split("/")));
+        segments.add(Math.min(Math.max(prefixPathDepth, 0), segments.size()), segment);
+        String adjusted = String.join("/", segments);
+        return path.endsWith("/") ? adjusted + "/" : adjusted;
+    }
+}
@@ -1,14 +1,220 @@
 package com.datapipe.jenkins.vault.configuration;
 
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
 import hudson.ExtensionPoint;
+import hudson.XmlFile;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Resolves the Vault configuration inherited by jobs and item groups.
+ *
+ * <p>The results of the resolvers of this plugin are cached per {@link ItemGroup}, and dropped
+ * when the global configuration or a folder is saved, or an item is moved. Other resolvers are
+ * asked every time, with {@link #getVaultConfig} by {@link #resolve(ItemGroup)} and
+ * {@link #mergeWithResolved(VaultConfiguration, ItemGroup)}, and with {@link #forJob} by
+ * {@link #mergeForJob(VaultConfiguration, Item)}, so their result may change at any time.
+ */
 public abstract class VaultConfigResolver implements ExtensionPoint {
 
+    private static final Map<ItemGroup<?>, Resolved> RESOLVED =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
     @NonNull
     public abstract VaultConfiguration forJob(@NonNull Item job);
 
     public abstract VaultConfiguration getVaultConfig(@NonNull ItemGroup<Item> itemGroup);
+
+    /**
+     * The configuration of an item group, merged from every resolver with defaults applied.
+     * @param itemGroup the item group
+     * @return a copy of the cached configuration, or {@code null} if nothing is configured
+     */
+    @CheckForNull
+    public static VaultConfiguration resolve(@NonNull ItemGroup<?> itemGroup) {
+        Resolved resolved = getResolved(itemGroup);
+        if (resolved.complete) {
+            return resolved.merged == null ? null : new VaultConfiguration(resolved.merged);
+        }
+        VaultConfiguration merged = null;
+        for (VaultConfiguration parent : configurations(itemGroup, resolved)) {
+            merged = merged == null ? parent : merged.mergeWithParent(parent);
+        }
+        return merged == null ? null : new VaultConfiguration(merged).fixDefaults();
+    }
+
+    /**
+     * Merge a configuration with the ones inherited by an item group, in resolver order, the
+     * same way as merging it with every {@link #getVaultConfig} in turn.
+     * @param configuration the configuration of the job or build, may be null
+     * @param itemGroup the item group
+     * @return the merged configuration without defaults, or {@code null} if nothing is
+     *     configured
+     */
+    @CheckForNull
+    public static VaultConfiguration mergeWithResolved(
+        @CheckForNull VaultConfiguration configuration, @NonNull ItemGroup<?> itemGroup) {
+        if (configuration == null) {
+            return resolve(itemGroup);
+        }
+        VaultConfiguration result = new VaultConfiguration(configuration);
+        for (VaultConfiguration parent : configurations(itemGroup, getResolved(itemGroup))) {
+            result = result.mergeWithParent(parent);
+        }
+        return result;
+    }
+
+    /**
+     * Merge a configuration with the ones of every resolver for a job, in resolver order, the
+     * same way as merging it with every {@link #forJob} in turn. The cached results are used for
+     * the resolvers of this plugin, whose {@link #forJob} is the configuration of the job parent.
+     * @param configuration the configuration of the job or build, may be null
+     * @param job the job
+     * @return the merged configuration without defaults, or {@code null} if nothing is
+     *     configured
+     */
+    @CheckForNull
+    public static VaultConfiguration mergeForJob(@CheckForNull VaultConfiguration configuration,
+        @NonNull Item job) {
+        Resolved resolved = getResolved(job.getParent());
+        VaultConfiguration result = configuration;
+        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
+            VaultConfiguration parent = isCached(resolver, resolved)
+                ? resolved.byResolver.get(resolver) : resolver.forJob(job);
+            if (result != null) {
+                result = result.mergeWithParent(parent);
+            } else {
+                result = parent;
+            }
+        }
+        // never hand out cached instances
+        return result == null ? null : new VaultConfiguration(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<VaultConfiguration> configurations(ItemGroup<?> itemGroup,
+        Resolved resolved) {
+        if (resolved.complete) {
+            return resolved.configurations;
+        }
+        List<VaultConfiguration> configurations = new ArrayList<>();
+        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
+            configurations.add(isCached(resolver, resolved) ? resolved.byResolver.get(resolver)
+                : resolver.getVaultConfig((ItemGroup<Item>) itemGroup));
+        }
+        return configurations;
+    }
+
+    private static boolean isCached(VaultConfigResolver resolver, Resolved resolved) {
+        return isCacheable(resolver) && resolved.byResolver.containsKey(resolver);
+    }
+
+    /**
+     * Only the results of the resolvers of this plugin are known to change on the events that
+     * invalidate the cache.
+     */
+    private static boolean isCacheable(VaultConfigResolver resolver) {
+        return resolver.getClass() == FolderVaultConfiguration.ForJob.class
+            || resolver.getClass() == GlobalVaultConfiguration.ForJob.class;
+    }
+
+    /**
+     * Drop every cached configuration.
+     */
+    public static void invalidateAll() {
+        synchronized (RESOLVED) {
+            GENERATION.incrementAndGet();
+            RESOLVED.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Resolved getResolved(ItemGroup<?> itemGroup) {
+        Resolved resolved = RESOLVED.get(itemGroup);
+        if (resolved != null) {
+            return resolved;
+        }
+        long generation = GENERATION.get();
+        Map<VaultConfigResolver, VaultConfiguration> byResolver = new LinkedHashMap<>();
+        boolean complete = true;
+        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
+            if (isCacheable(resolver)) {
+                byResolver.put(resolver, resolver.getVaultConfig((ItemGroup<Item>) itemGroup));
+            } else {
+                complete = false;
+            }
+        }
+        resolved = new Resolved(byResolver, complete);
+        synchronized (RESOLVED) {
+            // do not cache what was resolved before a concurrent change
+            if (GENERATION.get() == generation) {
+                RESOLVED.put(itemGroup, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * The results of the cacheable resolvers for one item group.
+     */
+    private static final class Resolved {
+
+        private final Map<VaultConfigResolver, VaultConfiguration> byResolver;
+        // whether every resolver is cached, only then configurations and merged are usable
+        private final boolean complete;
+        private final List<VaultConfiguration> configurations;
+        private final VaultConfiguration merged;
+
+        Resolved(Map<VaultConfigResolver, VaultConfiguration> byResolver, boolean complete) {
+            this.byResolver = byResolver;
+            this.complete = complete;
+            this.configurations = new ArrayList<>(byResolver.values());
+            VaultConfiguration result = null;
+            for (VaultConfiguration configuration : configurations) {
+                result = result == null ? configuration : result.mergeWithParent(configuration);
+            }
+            this.merged = result == null ? null : new VaultConfiguration(result).fixDefaults();
+        }
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof GlobalVaultConfiguration || o instanceof AbstractFolder) {
+                invalidateAll();
+            }
+        }
+    }
+
+    @Extension
+    public static class LocationListener extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidateAll();
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.datapipe.jenkins.vault.configuration;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import com.datapipe.jenkins.vault.VaultTransport;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -13,7 +14,6 @@ import hudson.model.Item;
 import hudson.security.ACL;
 import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
-import io.github.jopenlibs.vault.SslConfig;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
 import java.io.Serializable;
@@ -56,6 +56,16 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
 
     private Integer timeout = DEFAULT_TIMEOUT;
 
+    private Integer maxConcurrentReads;
+
+    private Boolean cacheSecrets;
+
+    private Integer cacheTtl;
+
+    private Integer cacheMaxSize;
+
+    private Boolean useHttp2;
+
     @DataBoundConstructor
     public VaultConfiguration() {
         // no args constructor
@@ -80,6 +90,11 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
         this.policies = toCopy.policies;
         this.disableChildPoliciesOverride = toCopy.disableChildPoliciesOverride;
         this.timeout = toCopy.timeout;
+        this.maxConcurrentReads = toCopy.maxConcurrentReads;
+        this.cacheSecrets = toCopy.cacheSecrets;
+        this.cacheTtl = toCopy.cacheTtl;
+        this.cacheMaxSize = toCopy.cacheMaxSize;
+        this.useHttp2 = toCopy.useHttp2;
     }
 
     public VaultConfiguration mergeWithParent(VaultConfiguration parent) {
@@ -118,6 +133,21 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
         if (result.skipSslVerification == null) {
             result.setSkipSslVerification(parent.skipSslVerification);
         }
+        if (result.maxConcurrentReads == null) {
+            result.setMaxConcurrentReads(parent.getMaxConcurrentReads());
+        }
+        if (result.cacheSecrets == null) {
+            result.setCacheSecrets(parent.cacheSecrets);
+        }
+        if (result.cacheTtl == null) {
+            result.setCacheTtl(parent.cacheTtl);
+        }
+        if (result.cacheMaxSize == null) {
+            result.setCacheMaxSize(parent.cacheMaxSize);
+        }
+        if (result.useHttp2 == null) {
+            result.setUseHttp2(parent.useHttp2);
+        }
         return result;
     }
 
@@ -220,6 +250,74 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
         this.timeout = timeout;
     }
 
+    public Integer getMaxConcurrentReads() {
+        return maxConcurrentReads;
+    }
+
+    /**
+     * Set the maximum number of secret paths read from vault at the same time.
+     *
+     * @param maxConcurrentReads concurrency limit, {@code 1} reads paths one after another
+     */
+    @DataBoundSetter
+    public void setMaxConcurrentReads(Integer maxConcurrentReads) {
+        this.maxConcurrentReads = maxConcurrentReads;
+    }
+
+    public Boolean getCacheSecrets() {
+        return cacheSecrets;
+    }
+
+    @DataBoundSetter
+    public void setCacheSecrets(Boolean cacheSecrets) {
+        this.cacheSecrets = cacheSecrets;
+    }
+
+    public Integer getCacheTtl() {
+        return cacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setCacheTtl(Integer cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public Integer getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setCacheMaxSize(Integer cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Boolean getUseHttp2() {
+        return useHttp2;
+    }
+
+    /**
+     * Read secrets with the JDK HTTP client, which multiplexes concurrent reads over HTTP/2
+     * connections when the Vault server supports it.
+     *
+     * @param useHttp2 {@code true} to read secrets over HTTP/2
+     */
+    @DataBoundSetter
+    public void setUseHttp2(Boolean useHttp2) {
+        this.useHttp2 = useHttp2;
+    }
+
+    /**
+     * Time in seconds a secret read from vault may be served from the controller-wide cache
+     *
+     * @return cache TTL, or 0 if caching is disabled
+     */
+    public int getEffectiveCacheTtl() {
+        if (cacheSecrets == null || !cacheSecrets || cacheTtl == null) {
+            return 0;
+        }
+        return Math.max(cacheTtl, 0);
+    }
+
     /**
      * Number of retries when reading a secret from vault
      *
@@ -248,6 +346,16 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
 
         public static final int DEFAULT_ENGINE_VERSION = 2;
 
+        public static final int DEFAULT_MAX_CONCURRENT_READS = 1;
+
+        public static final boolean DEFAULT_CACHE_SECRETS = false;
+
+        public static final int DEFAULT_CACHE_TTL = 60;
+
+        public static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+
+        public static final boolean DEFAULT_USE_HTTP2 = false;
+
         @Override
         @NonNull
         public String getDisplayName() {
@@ -272,14 +380,10 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
 
     @NonNull
     public VaultConfig getVaultConfig() {
-        VaultConfig vaultConfig = new VaultConfig();
-        vaultConfig.address(this.getVaultUrl());
+        VaultConfig vaultConfig = VaultTransport.newVaultConfig(this.getVaultUrl(),
+            this.getSkipSslVerification());
         vaultConfig.engineVersion(this.getEngineVersion());
         try {
-            if (this.getSkipSslVerification()) {
-                vaultConfig.sslConfig(new SslConfig().verify(false).build());
-            }
-
             if (StringUtils.isNotEmpty(this.getVaultNamespace())) {
                 vaultConfig.nameSpace(this.getVaultNamespace());
             }
@@ -303,6 +407,21 @@ public class VaultConfiguration extends AbstractDescribableImpl<VaultConfigurati
         if (getFailIfNotFound() == null) {
             setFailIfNotFound(DescriptorImpl.DEFAULT_FAIL_NOT_FOUND);
         }
+        if (getMaxConcurrentReads() == null || getMaxConcurrentReads() < 1) {
+            setMaxConcurrentReads(DescriptorImpl.DEFAULT_MAX_CONCURRENT_READS);
+        }
+        if (getCacheSecrets() == null) {
+            setCacheSecrets(DescriptorImpl.DEFAULT_CACHE_SECRETS);
+        }
+        if (getCacheTtl() == null) {
+            setCacheTtl(DescriptorImpl.DEFAULT_CACHE_TTL);
+        }
+        if (getCacheMaxSize() == null) {
+            setCacheMaxSize(DescriptorImpl.DEFAULT_CACHE_MAX_SIZE);
+        }
+        if (getUseHttp2() == null) {
+            setUseHttp2(DescriptorImpl.DEFAULT_USE_HTTP2);
+        }
         return this;
     }
 
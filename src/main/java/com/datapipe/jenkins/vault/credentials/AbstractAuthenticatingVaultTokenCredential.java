@@ -7,6 +7,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Util;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import org.kohsuke.stapler.DataBoundSetter;
 
 /**
@@ -65,6 +66,23 @@ public abstract class AbstractAuthenticatingVaultTokenCredential extends
         return getToken(getVaultAuth(vault));
     }
 
+    @Override
+    protected final AuthResponse login(@NonNull Vault vault) {
+        return login(getVaultAuth(vault));
+    }
+
+    /**
+     * Authenticate with vault using this credential and return the login response, which carries
+     * the token TTL. The {@code auth} client will be configured with this credentials namespace.
+     * @param auth vault auth client
+     * @return login response or null if only {@link #getToken(Auth)} is implemented
+     * @throws VaultPluginException if failed to authenticate with vault
+     */
+    @CheckForNull
+    protected AuthResponse login(@NonNull Auth auth) {
+        return null;
+    }
+
     /**
      * Authenticate with vault using this credential and return the token. The {@code auth} client
      * will be configured with this credentials namespace.
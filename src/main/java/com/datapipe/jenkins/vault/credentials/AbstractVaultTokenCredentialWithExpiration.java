@@ -1,7 +1,10 @@
 package com.datapipe.jenkins.vault.credentials;
 
 import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.TokenRenewal;
+import com.datapipe.jenkins.vault.VaultTransport;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import io.github.jopenlibs.vault.Vault;
@@ -9,12 +12,17 @@ import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
 import io.github.jopenlibs.vault.api.Auth.TokenRequest;
-import java.util.Calendar;
-import java.util.HashMap;
+import io.github.jopenlibs.vault.response.AuthResponse;
+import io.github.jopenlibs.vault.response.LookupResponse;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.util.Timer;
 import org.kohsuke.stapler.DataBoundSetter;
 
 public abstract class AbstractVaultTokenCredentialWithExpiration
@@ -44,19 +52,29 @@ public abstract class AbstractVaultTokenCredentialWithExpiration
         this.usePolicies = usePolicies;
     }
 
-    // Renamed from tokenExpiry to prevent XStream from attempting to deserialize old instances of this class which had the type `Calendar` prior to https://github.com/jenkinsci/hashicorp-vault-plugin/pull/223.
-    private transient Map<String, Calendar> tokenExpiryCache;
-    private transient Map<String, String> tokenCache;
+    // Not named tokenExpiry to prevent XStream from attempting to deserialize old instances of this class which had the type `Calendar` prior to https://github.com/jenkinsci/hashicorp-vault-plugin/pull/223.
+    private transient volatile TokenCache tokenCache;
 
     protected AbstractVaultTokenCredentialWithExpiration(CredentialsScope scope, String id,
         String description) {
         super(scope, id, description);
-        tokenExpiryCache = new HashMap<>();
-        tokenCache = new HashMap<>();
+        tokenCache = new TokenCache();
     }
 
     protected abstract String getToken(Vault vault);
 
+    /**
+     * Log in to Vault and return the login response. Implementations that have the response at
+     * hand should return it, so that the token TTL is taken from its {@code lease_duration}
+     * instead of being looked up with an extra request.
+     * @param vault the Vault instance
+     * @return the login response or null to use {@link #getToken(Vault)}
+     */
+    @CheckForNull
+    protected AuthResponse login(@NonNull Vault vault) {
+        return null;
+    }
+
     /**
      * Retrieve the Vault auth client. May be overridden in subclasses.
      * @param vault the Vault instance
@@ -72,21 +90,40 @@ public abstract class AbstractVaultTokenCredentialWithExpiration
      * @param vault the vault instance
      * @param policies the policies list
      * @return the new token or null if it cannot be provisioned
+     * @deprecated not called when logging in, override
+     *     {@link #getChildToken(Vault, List, Long)} instead
      */
+    @Deprecated
     protected String getChildToken(Vault vault, List<String> policies) {
+        AuthResponse response = getChildToken(vault, policies, null);
+        return response == null ? null : response.getAuthClientToken();
+    }
+
+    /**
+     * Creates a child token with specific policies if this credential is configured to use
+     * policies and a list of requested policies is provided.
+     * @param vault the vault instance
+     * @param policies the policies list
+     * @param parentTTL the TTL of the current token in seconds, looked up if null
+     * @return the token creation response or null if no child token is needed
+     */
+    @CheckForNull
+    protected AuthResponse getChildToken(Vault vault, List<String> policies,
+        @CheckForNull Long parentTTL) {
         if (usePolicies == null || !usePolicies || policies == null || policies.isEmpty()) {
             return null;
         }
         Auth auth = getVaultAuth(vault);
         try {
-            String ttl = String.format("%ds", getTokenTTL(vault));
+            String ttl = String.format("%ds", parentTTL != null ? parentTTL : getTokenTTL(vault));
             TokenRequest tokenRequest = (new TokenRequest())
                 .polices(policies)
                 // Set the TTL to the parent token TTL
                 .ttl(ttl);
             LOGGER.log(Level.FINE, "Requesting child token with policies {0} and TTL {1}",
                 new Object[] {policies, ttl});
-            return auth.createToken(tokenRequest).getAuthClientToken();
+            return VaultMetrics.time(VaultMetrics.CREATE_TOKEN,
+                () -> auth.createToken(tokenRequest));
         } catch (VaultException e) {
             throw new VaultPluginException("Could not retrieve token with policies from Vault", e);
         }
@@ -104,75 +141,308 @@ public abstract class AbstractVaultTokenCredentialWithExpiration
         return String.join(",", policies);
     }
 
-    @Override
-    public Vault authorizeWithVault(VaultConfig config, List<String> policies) {
-        // Upgraded instances can have these not initialized in the constructor (serialized jobs possibly)
-        if (tokenCache == null || tokenExpiryCache == null) {
-            tokenCache = new HashMap<>();
-            tokenExpiryCache = new HashMap<>();
+    private TokenCache getTokenCache() {
+        // Upgraded instances can have this not initialized in the constructor (serialized jobs possibly)
+        TokenCache cache = tokenCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = tokenCache;
+                if (cache == null) {
+                    tokenCache = cache = new TokenCache();
+                }
+            }
         }
+        return cache;
+    }
 
+    /**
+     * Number of authorizations served from a cached token.
+     * @return token cache hit count
+     */
+    public long getTokenCacheHits() {
+        return getTokenCache().hits.get();
+    }
+
+    /**
+     * Number of authorizations that required a new token.
+     * @return token cache miss count
+     */
+    public long getTokenCacheMisses() {
+        return getTokenCache().misses.get();
+    }
+
+    @Override
+    public Vault authorizeWithVault(VaultConfig config, List<String> policies) {
+        TokenCache cache = getTokenCache();
         String cacheKey = getCacheKey(policies);
         Vault vault = getVault(config);
-        if (tokenExpired(cacheKey)) {
-            tokenCache.put(cacheKey, getToken(vault));
-            config.token(tokenCache.get(cacheKey));
-
-            // After current token is configured, try to retrieve a new child token with limited policies
-            String childToken = getChildToken(vault, policies);
-            if (childToken != null) {
-                // A new token was generated, put it in the cache and configure vault
-                tokenCache.put(cacheKey, childToken);
-                config.token(childToken);
+
+        CachedToken cached = cache.tokens.get(cacheKey);
+        if (cached != null && !cached.isExpiring(cacheKey)) {
+            useCachedToken(cache, cached, config);
+            return vault;
+        }
+
+        // Only one caller refreshes the token for a cache key. While it does, other callers keep
+        // using the current token if it has not actually expired yet, or wait for the new one.
+        ReentrantLock lock = cache.getLock(cacheKey);
+        if (cached != null && !cached.isExpired()) {
+            if (!lock.tryLock()) {
+                useCachedToken(cache, cached, config);
+                return vault;
             }
-            setTokenExpiry(vault, cacheKey);
         } else {
-            config.token(tokenCache.get(cacheKey));
+            lock.lock();
+        }
+        try {
+            cached = cache.tokens.get(cacheKey);
+            if (cached != null && !cached.isExpiring(cacheKey)) {
+                // refreshed by another caller while we were waiting
+                useCachedToken(cache, cached, config);
+                return vault;
+            }
+            cache.misses.incrementAndGet();
+            VaultMetrics.tokenCacheMiss();
+            login(cache, vault, config, policies, cacheKey).used = true;
+        } finally {
+            lock.unlock();
         }
         return vault;
     }
 
+    private static void useCachedToken(TokenCache cache, CachedToken cached, VaultConfig config) {
+        cache.hits.incrementAndGet();
+        VaultMetrics.tokenCacheHit();
+        cached.used = true;
+        config.token(cached.token);
+    }
+
+    private CachedToken login(TokenCache cache, Vault vault, VaultConfig config,
+        List<String> policies, String cacheKey) {
+        // The login response carries the TTL of the token, only look it up if we do not have it
+        String token;
+        Long tokenTTL = null;
+        boolean renewable = false;
+        AuthResponse response = timeLogin(vault);
+        if (response != null) {
+            token = response.getAuthClientToken();
+            tokenTTL = response.getAuthLeaseDuration();
+            renewable = Boolean.TRUE.equals(response.isAuthRenewable());
+        } else {
+            token = timeGetToken(vault);
+        }
+        config.token(token);
+
+        // After current token is configured, try to retrieve a new child token with limited policies
+        AuthResponse childResponse = getChildToken(vault, policies, tokenTTL);
+        if (childResponse != null) {
+            // A new token was generated, put it in the cache and configure vault
+            token = childResponse.getAuthClientToken();
+            tokenTTL = childResponse.getAuthLeaseDuration();
+            renewable = Boolean.TRUE.equals(childResponse.isAuthRenewable());
+            config.token(token);
+        }
+
+        if (tokenTTL == null) {
+            tokenTTL = 0L;
+            try {
+                LookupResponse lookup = VaultMetrics.time(VaultMetrics.LOOKUP_SELF,
+                    () -> getVaultAuth(vault).lookupSelf());
+                tokenTTL = lookup.getTTL();
+                renewable = lookup.isRenewable();
+            } catch (VaultException e) {
+                LOGGER.log(Level.WARNING, "Could not determine token expiration for policies '" +
+                    cacheKey + "'. Check if token is allowed to access auth/token/lookup-self. " +
+                    "Assuming token TTL expired.", e);
+            }
+        }
+        CachedToken cached = new CachedToken(token, tokenTTL, renewable, config, policies,
+            response != null || childResponse != null);
+        CachedToken previous = cache.tokens.put(cacheKey, cached);
+        scheduleRenewal(cache, cacheKey, cached);
+        if (previous != null && previous.issued && !previous.token.equals(token)) {
+            revoke(previous, cacheKey);
+        }
+        return cached;
+    }
+
+    /**
+     * Revoke a token replaced by a new login, so that it does not stay valid until it expires.
+     * Tokens returned by {@link #getToken(Vault)} may be configured elsewhere and are left alone.
+     */
+    private void revoke(CachedToken previous, String cacheKey) {
+        Timer.get().submit(() -> {
+            try {
+                Vault vault = getVault(VaultTransport.copyConfig(previous.config, previous.token));
+                getVaultAuth(vault).revokeSelf();
+                LOGGER.log(Level.FINE, "Revoked the replaced auth token for policies ''{0}''",
+                    cacheKey);
+            } catch (VaultException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not revoke the replaced auth token for policies '"
+                    + cacheKey + "'", e);
+            }
+        });
+    }
+
+    private AuthResponse timeLogin(Vault vault) {
+        VaultMetrics.Sample sample = VaultMetrics.start(VaultMetrics.LOGIN);
+        try {
+            AuthResponse response = login(vault);
+            if (response == null) {
+                // getToken is used instead
+                sample.discard();
+            } else {
+                sample.response(response);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        } finally {
+            sample.close();
+        }
+    }
+
+    private String timeGetToken(Vault vault) {
+        try (VaultMetrics.Sample sample = VaultMetrics.start(VaultMetrics.GET_TOKEN)) {
+            try {
+                String token = getToken(vault);
+                sample.success();
+                return token;
+            } catch (RuntimeException e) {
+                sample.failure(e);
+                throw e;
+            }
+        }
+    }
+
+    private void scheduleRenewal(TokenCache cache, String cacheKey, CachedToken cached) {
+        TokenRenewal.schedule(() -> renew(cache, cacheKey, cached), cached.ttl);
+    }
+
+    /**
+     * Renew the cached token for the given policies now, as the background renewal would.
+     * @param policies the policies the token was issued for
+     */
+    void renewToken(List<String> policies) {
+        TokenCache cache = getTokenCache();
+        String cacheKey = getCacheKey(policies);
+        CachedToken cached = cache.tokens.get(cacheKey);
+        if (cached != null) {
+            renew(cache, cacheKey, cached);
+        }
+    }
+
+    /**
+     * Extend the lifetime of a cached token with renew-self, or log in again if the token
+     * cannot be renewed. Tokens that were not used since they were issued or last renewed are
+     * left to expire.
+     */
+    private void renew(TokenCache cache, String cacheKey, CachedToken cached) {
+        if (cache.tokens.get(cacheKey) != cached) {
+            // already replaced
+            return;
+        }
+        if (!cached.used) {
+            LOGGER.log(Level.FINE, "Auth token for policies ''{0}'' is idle, not renewing it",
+                cacheKey);
+            return;
+        }
+        ReentrantLock lock = cache.getLock(cacheKey);
+        lock.lock();
+        try {
+            if (cache.tokens.get(cacheKey) != cached) {
+                return;
+            }
+            // The configuration the token was issued with may be serving reads for a build,
+            // so work on a copy of it.
+            VaultConfig config = VaultTransport.copyConfig(cached.config, cached.token);
+            Vault vault = getVault(config);
+            if (cached.renewable) {
+                try {
+                    AuthResponse response = getVaultAuth(vault).renewSelf();
+                    CachedToken renewed = new CachedToken(cached.token,
+                        response.getAuthLeaseDuration(),
+                        Boolean.TRUE.equals(response.isAuthRenewable()), cached.config,
+                        cached.policies, cached.issued);
+                    cache.tokens.put(cacheKey, renewed);
+                    scheduleRenewal(cache, cacheKey, renewed);
+                    LOGGER.log(Level.FINE, "Renewed auth token for policies ''{0}''", cacheKey);
+                    return;
+                } catch (VaultException e) {
+                    LOGGER.log(Level.FINE, "Could not renew auth token for policies '" +
+                        cacheKey + "', logging in again", e);
+                }
+            }
+            login(cache, vault, config, cached.policies, cacheKey);
+        } catch (VaultException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Background renewal of the auth token for policies '" +
+                cacheKey + "' failed, it will be re-issued when it expires", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     protected Vault getVault(VaultConfig config) {
         return Vault.create(config);
     }
 
     private long getTokenTTL(Vault vault) throws VaultException {
-        return getVaultAuth(vault).lookupSelf().getTTL();
+        return VaultMetrics.time(VaultMetrics.LOOKUP_SELF, () -> getVaultAuth(vault).lookupSelf())
+            .getTTL();
     }
 
-    private void setTokenExpiry(Vault vault, String cacheKey) {
-        int tokenTTL = 0;
-        try {
-            tokenTTL = (int) getTokenTTL(vault);
-        } catch (VaultException e) {
-            LOGGER.log(Level.WARNING, "Could not determine token expiration for policies '" +
-                cacheKey + "'. Check if token is allowed to access auth/token/lookup-self. " +
-                "Assuming token TTL expired.", e);
+    private static final class TokenCache {
+
+        private final ConcurrentMap<String, CachedToken> tokens = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        ReentrantLock getLock(String cacheKey) {
+            return locks.computeIfAbsent(cacheKey, k -> new ReentrantLock());
         }
-        Calendar expiry = Calendar.getInstance();
-        expiry.add(Calendar.SECOND, tokenTTL);
-        tokenExpiryCache.put(cacheKey, expiry);
     }
 
-    private boolean tokenExpired(String cacheKey) {
-        Calendar expiry = tokenExpiryCache.get(cacheKey);
-        if (expiry == null) {
-            return true;
+    private static final class CachedToken {
+
+        private final String token;
+        private final long ttl;
+        private final long expiresAt;
+        private final boolean renewable;
+        private final VaultConfig config;
+        private final List<String> policies;
+        // issued by a login or as a child token, and therefore only used through this cache
+        private final boolean issued;
+        private volatile boolean used;
+
+        CachedToken(String token, long ttl, boolean renewable, VaultConfig config,
+            List<String> policies, boolean issued) {
+            this.token = token;
+            this.ttl = ttl;
+            this.expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+            this.renewable = renewable;
+            this.config = config;
+            this.policies = policies;
+            this.issued = issued;
         }
 
-        boolean result = true;
-        Calendar now = Calendar.getInstance();
-        long timeDiffInMillis = now.getTimeInMillis() - expiry.getTimeInMillis();
-        LOGGER.log(Level.FINE, "Expiration for " + cacheKey + " is " + expiry + ", diff: " + timeDiffInMillis);
-        if (timeDiffInMillis < -10000L) {
-            // token will be valid for at least another 10s
-            result = false;
-            LOGGER.log(Level.FINE, "Auth token is still valid for policies '" + cacheKey + "'");
-        } else {
-            LOGGER.log(Level.FINE,"Auth token has to be re-issued for policies '" + cacheKey +
-                    "' (" + timeDiffInMillis + "ms difference)");
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
         }
 
-        return result;
+        /**
+         * @return true unless the token will be valid for at least another 10s
+         */
+        boolean isExpiring(String cacheKey) {
+            long timeDiffInMillis = System.currentTimeMillis() - expiresAt;
+            if (timeDiffInMillis < -10000L) {
+                LOGGER.log(Level.FINE, "Auth token is still valid for policies '" + cacheKey + "'");
+                return false;
+            }
+            LOGGER.log(Level.FINE, "Auth token has to be re-issued for policies '" + cacheKey +
+                "' (" + timeDiffInMillis + "ms difference)");
+            return true;
+        }
     }
 }
@@ -9,6 +9,7 @@ import hudson.Util;
 import hudson.util.Secret;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.io.Serial;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -50,9 +51,14 @@ public class VaultAppRoleCredential extends AbstractAuthenticatingVaultTokenCred
 
     @Override
     public String getToken(Auth auth) {
+        return login(auth).getAuthClientToken();
+    }
+
+    @Override
+    @NonNull
+    protected AuthResponse login(@NonNull Auth auth) {
         try {
-            return auth.loginByAppRole(path, roleId, Secret.toString(secretId))
-                .getAuthClientToken();
+            return auth.loginByAppRole(path, roleId, Secret.toString(secretId));
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
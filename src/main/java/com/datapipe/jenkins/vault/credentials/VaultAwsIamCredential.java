@@ -6,6 +6,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
@@ -60,7 +61,13 @@ public class VaultAwsIamCredential extends AbstractAuthenticatingVaultTokenCrede
 
     @Override
     public String getToken(Auth auth) {
-        return AwsHelper.getToken(auth, null, this.role, this.serverId, this.mountPath);
+        return login(auth).getAuthClientToken();
+    }
+
+    @Override
+    @NonNull
+    protected AuthResponse login(@NonNull Auth auth) {
+        return AwsHelper.login(auth, null, this.role, this.serverId, this.mountPath);
     }
 
     @Extension
@@ -8,31 +8,60 @@ import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
 import com.cloudbees.plugins.credentials.domains.DomainCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.datapipe.jenkins.vault.credentials.common.AbstractVaultBaseStandardCredentials;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.springframework.security.core.Authentication;
 
 /**
  * This class provides the credentials that we need to authenticate against Vault
  * and the credentials stored in Vault, after assigning the right context to them.
  *
+ * <p>The Vault credentials visible from each item group are indexed once by its full name, up to
+ * {@code indexSize} groups, and indexed again after a credential store is saved or an item is
+ * moved. Vault-backed credentials are bound to the context of their store when they are looked
+ * up, so the index does not keep item groups alive.
+ *
  * @author Hassan CHAKROUN {@literal <h.chakrouun@gmail.com> }
  *
  */
 @Extension(optional = true, ordinal = 1)
 public class VaultCredentialsProvider extends CredentialsProvider {
 
+    private static final int INDEX_SIZE = SystemProperties.getInteger(
+        VaultCredentialsProvider.class.getName() + ".indexSize", 1000);
+
+    // full name of an item group to the Vault credentials visible from it, least recently used
+    // first, guarded by itself
+    private static final Map<String, List<Level>> INDEX =
+        new LinkedHashMap<String, List<Level>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Level>> eldest) {
+                return size() > INDEX_SIZE;
+            }
+        };
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
     @Override
     @NonNull
     public <C extends Credentials> List<C> getCredentialsInItemGroup(@NonNull Class<C> type,
@@ -44,47 +73,23 @@ public class VaultCredentialsProvider extends CredentialsProvider {
             CredentialsMatchers.always());
         List<C> creds = new ArrayList<>();
         if (ACL.SYSTEM2.equals(authentication)) {
-            for (ItemGroup<?> g = itemGroup; g instanceof AbstractFolder; g = ((AbstractFolder<?>) g).getParent()) {
-                FolderCredentialsProperty property = ((AbstractFolder<?>) g).getProperties()
-                    .get(FolderCredentialsProperty.class);
-                if (property == null) {
-                    continue;
-                }
-
-                List<C> folderCreds = DomainCredentials.getCredentials(
-                    property.getDomainCredentialsMap(),
+            // Only include SYSTEM-scoped credentials when context is Jenkins (global).
+            // This prevents exposure of SYSTEM-scoped credentials to item/folder contexts (CVE-2025-67642).
+            boolean includeSystemCredentials = itemGroup instanceof Jenkins;
+            for (Level level : getIndex(itemGroup)) {
+                List<C> levelCreds = DomainCredentials.getCredentials(
+                    level.domainCredentials,
                     type,
                     domainRequirements,
                     matcher
                 );
-
-                if (type != VaultCredential.class) {
-                    for (C c : folderCreds) {
-                        ((AbstractVaultBaseStandardCredentials) c).setContext(g);
+                for (C c : levelCreds) {
+                    if (level.global && !includeSystemCredentials
+                        && CredentialsScope.SYSTEM == c.getScope()) {
+                        continue;
                     }
+                    creds.add(bind(c, level.getContext(itemGroup), type));
                 }
-
-                creds.addAll(folderCreds);
-            }
-
-            // Only include SYSTEM-scoped credentials when context is Jenkins (global).
-            // This prevents exposure of SYSTEM-scoped credentials to item/folder contexts (CVE-2025-67642).
-            boolean includeSystemCredentials = itemGroup instanceof Jenkins;
-            List<C> globalCreds = DomainCredentials.getCredentials(
-                SystemCredentialsProvider.getInstance().getDomainCredentialsMap(),
-                type,
-                domainRequirements,
-                matcher
-            );
-
-            for (C c : globalCreds) {
-                if (!includeSystemCredentials && CredentialsScope.SYSTEM == c.getScope()) {
-                    continue;
-                }
-                if (type != VaultCredential.class) {
-                    ((AbstractVaultBaseStandardCredentials) c).setContext(Jenkins.get());
-                }
-                creds.add(c);
             }
         }
         return creds;
@@ -103,4 +108,146 @@ public class VaultCredentialsProvider extends CredentialsProvider {
         ItemGroup<?> context = (parent instanceof Jenkins) ? null : parent;
         return getCredentialsInItemGroup(type, context, authentication, domainRequirements);
     }
+
+    /**
+     * Drop the index of every item group.
+     */
+    public static void invalidateAll() {
+        synchronized (INDEX) {
+            GENERATION.incrementAndGet();
+            INDEX.clear();
+        }
+    }
+
+    /**
+     * Drop the index of an item group and of the item groups below it.
+     * @param fullName the full name of the item group
+     */
+    static void invalidate(@NonNull String fullName) {
+        synchronized (INDEX) {
+            GENERATION.incrementAndGet();
+            INDEX.keySet().removeIf(k -> k.equals(fullName) || k.startsWith(fullName + "/"));
+        }
+    }
+
+    private static List<Level> getIndex(@Nullable ItemGroup<?> itemGroup) {
+        String key = itemGroup == null ? "" : itemGroup.getFullName();
+        List<Level> levels;
+        long generation;
+        synchronized (INDEX) {
+            levels = INDEX.get(key);
+            generation = GENERATION.get();
+        }
+        if (levels != null) {
+            return levels;
+        }
+        levels = new ArrayList<>();
+        int depth = 0;
+        for (ItemGroup<?> g = itemGroup; g instanceof AbstractFolder;
+            g = ((AbstractFolder<?>) g).getParent(), depth++) {
+            FolderCredentialsProperty property = ((AbstractFolder<?>) g).getProperties()
+                .get(FolderCredentialsProperty.class);
+            if (property != null) {
+                levels.add(new Level(filter(property.getDomainCredentialsMap()), depth));
+            }
+        }
+        levels.add(new Level(
+            filter(SystemCredentialsProvider.getInstance().getDomainCredentialsMap()), -1));
+        synchronized (INDEX) {
+            // do not cache what was indexed before a concurrent change
+            if (GENERATION.get() == generation) {
+                INDEX.put(key, levels);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Keep the Vault credentials of a store.
+     */
+    private static Map<Domain, List<Credentials>> filter(
+        Map<Domain, List<Credentials>> domainCredentials) {
+        Map<Domain, List<Credentials>> result = new LinkedHashMap<>();
+        for (Map.Entry<Domain, List<Credentials>> entry : domainCredentials.entrySet()) {
+            List<Credentials> credentials = new ArrayList<>();
+            for (Credentials c : entry.getValue()) {
+                if (c instanceof VaultCredential
+                    || c instanceof AbstractVaultBaseStandardCredentials) {
+                    credentials.add(c);
+                }
+            }
+            if (!credentials.isEmpty()) {
+                result.put(entry.getKey(), credentials);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bind a copy of a Vault-backed credential to the context of its store. Vault authentication
+     * credentials are returned as they are.
+     */
+    private static <C extends Credentials> C bind(C credential, ItemGroup<?> context,
+        Class<C> type) {
+        if (credential instanceof AbstractVaultBaseStandardCredentials) {
+            return type.cast(
+                ((AbstractVaultBaseStandardCredentials) credential).withContext(context));
+        }
+        return credential;
+    }
+
+    /**
+     * The Vault credentials of one credential store.
+     */
+    private static final class Level {
+
+        private final Map<Domain, List<Credentials>> domainCredentials;
+        // number of parents from the looked up item group to the store, -1 for the system store
+        private final int depth;
+        private final boolean global;
+
+        Level(Map<Domain, List<Credentials>> domainCredentials, int depth) {
+            this.domainCredentials = domainCredentials;
+            this.depth = depth;
+            this.global = depth < 0;
+        }
+
+        ItemGroup<?> getContext(ItemGroup<?> itemGroup) {
+            if (global) {
+                return Jenkins.get();
+            }
+            ItemGroup<?> g = itemGroup;
+            for (int i = 0; i < depth; i++) {
+                g = ((AbstractFolder<?>) g).getParent();
+            }
+            return g;
+        }
+    }
+
+    @Extension(optional = true)
+    public static class StoreListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractFolder) {
+                invalidate(((AbstractFolder<?>) o).getFullName());
+            } else if (o instanceof SystemCredentialsProvider) {
+                invalidateAll();
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    public static class LocationListener extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidateAll();
+        }
+    }
 }
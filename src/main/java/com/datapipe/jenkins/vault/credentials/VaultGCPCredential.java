@@ -7,6 +7,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -45,6 +46,12 @@ public class VaultGCPCredential extends AbstractAuthenticatingVaultTokenCredenti
 
     @Override
     public String getToken(Auth auth) {
+        return login(auth).getAuthClientToken();
+    }
+
+    @Override
+    @NonNull
+    protected AuthResponse login(@NonNull Auth auth) {
         String jwt;
         try {
             jwt = retrieveGoogleJWT();
@@ -53,7 +60,7 @@ public class VaultGCPCredential extends AbstractAuthenticatingVaultTokenCredenti
         }
 
         try {
-            return auth.loginByGCP(role, jwt).getAuthClientToken();
+            return auth.loginByGCP(role, jwt);
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
@@ -8,6 +8,7 @@ import hudson.Extension;
 import hudson.util.Secret;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
@@ -48,9 +49,14 @@ public class VaultGithubTokenCredential extends AbstractAuthenticatingVaultToken
 
     @Override
     public String getToken(Auth auth) {
+        return login(auth).getAuthClientToken();
+    }
+
+    @Override
+    @NonNull
+    protected AuthResponse login(@NonNull Auth auth) {
         try {
-            return auth.loginByGithub(Secret.toString(accessToken), mountPath)
-                .getAuthClientToken();
+            return auth.loginByGithub(Secret.toString(accessToken), mountPath);
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
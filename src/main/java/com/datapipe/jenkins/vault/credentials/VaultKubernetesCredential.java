@@ -8,6 +8,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import io.github.jopenlibs.vault.VaultException;
 import io.github.jopenlibs.vault.api.Auth;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -51,8 +52,14 @@ public class VaultKubernetesCredential extends AbstractAuthenticatingVaultTokenC
     }
 
     @Override
-    @SuppressFBWarnings(value = "DMI_HARDCODED_ABSOLUTE_FILENAME")
     protected String getToken(Auth auth) {
+        return login(auth).getAuthClientToken();
+    }
+
+    @Override
+    @NonNull
+    @SuppressFBWarnings(value = "DMI_HARDCODED_ABSOLUTE_FILENAME")
+    protected AuthResponse login(@NonNull Auth auth) {
         String jwt;
         try (Stream<String> input =  Files.lines(Paths.get(SERVICE_ACCOUNT_TOKEN_PATH)) ) {
             jwt = input.collect(Collectors.joining());
@@ -61,8 +68,7 @@ public class VaultKubernetesCredential extends AbstractAuthenticatingVaultTokenC
         }
 
         try {
-            return auth.loginByJwt(mountPath, role, jwt)
-                .getAuthClientToken();
+            return auth.loginByJwt(mountPath, role, jwt);
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault: " + e.getMessage(), e);
         }
@@ -1,5 +1,6 @@
 package com.datapipe.jenkins.vault.credentials;
 
+import com.datapipe.jenkins.vault.VaultTransport;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
@@ -110,7 +111,7 @@ public class VaultTokenCredentialBinding extends MultiBinding<AbstractVaultToken
 
     private String getToken(AbstractVaultTokenCredential credentials) {
         try {
-            VaultConfig config = new VaultConfig().address(vaultAddr);
+            VaultConfig config = VaultTransport.newVaultConfig(vaultAddr, false);
             if (StringUtils.isNotEmpty(vaultNamespace)) {
                 config.nameSpace(vaultNamespace);
             }
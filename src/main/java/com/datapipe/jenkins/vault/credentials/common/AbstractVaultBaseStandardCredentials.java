@@ -5,25 +5,42 @@ import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Util;
 import hudson.model.ItemGroup;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
 import org.kohsuke.stapler.DataBoundSetter;
 
-import static com.datapipe.jenkins.vault.credentials.common.VaultHelper.getVaultSecretKey;
 import static com.datapipe.jenkins.vault.credentials.common.VaultHelper.getVaultSecret;
 
 /**
  * Base Vault credentials that contain a {@code path}, {@code prefixPath}, {@code namespace},
  * and {@code engineVersion}.
+ *
+ * <p>A copy returned by a lookup serves every key from one read of the secret for at most
+ * {@code snapshotTtlMillis} (5 seconds by default), long enough for one binding and short enough
+ * for long-lived holders of the copy to see a rotated secret. 0 reads the secret every time.
  */
-public abstract class AbstractVaultBaseStandardCredentials extends BaseStandardCredentials {
+public abstract class AbstractVaultBaseStandardCredentials extends BaseStandardCredentials
+    implements Cloneable {
+
+    /**
+     * How long a copy returned by a lookup serves the secret from one read.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static long SNAPSHOT_TTL_MILLIS = SystemProperties.getLong(
+        AbstractVaultBaseStandardCredentials.class.getName() + ".snapshotTtlMillis", 5000L);
 
     private String path;
     private String prefixPath;
     private String namespace;
     private Integer engineVersion;
     private transient ItemGroup context;
+    // whether this is a copy returned by one lookup, see withContext
+    private transient boolean lookupCopy;
+    private transient volatile Snapshot snapshot;
 
     AbstractVaultBaseStandardCredentials(CredentialsScope scope, String id, String description) {
         super(scope, id, description);
@@ -73,6 +90,28 @@ public abstract class AbstractVaultBaseStandardCredentials extends BaseStandardC
         this.context = context;
     }
 
+    /**
+     * Get a copy of this credential bound to a context, leaving this instance, which may be
+     * shared by credential stores and other lookups, untouched. The copy serves every field of
+     * the binding or snapshot it is looked up for from the same secret version, see
+     * {@link #getVaultSecretSnapshot()}.
+     * @param context the item group to look up the Vault configuration in
+     * @return the bound copy
+     */
+    @NonNull
+    public AbstractVaultBaseStandardCredentials withContext(@NonNull ItemGroup context) {
+        try {
+            AbstractVaultBaseStandardCredentials copy =
+                (AbstractVaultBaseStandardCredentials) super.clone();
+            copy.context = context;
+            copy.lookupCopy = true;
+            copy.snapshot = null;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public ItemGroup getContext() {
         return this.context;
     }
@@ -84,13 +123,42 @@ public abstract class AbstractVaultBaseStandardCredentials extends BaseStandardC
      */
     @NonNull
     protected String getVaultSecretKeyValue(String key) {
-        String s = getVaultSecretKey(this.path, key, this.prefixPath, this.namespace, this.engineVersion, this.context);
+        Map<String, String> values = getVaultSecretSnapshot();
+        if (!values.containsKey(key)) {
+            throw new VaultPluginException(String.format(
+                "Key %s could not be found in path %s", key, this.path));
+        }
+        String s = values.get(key);
         if (s == null) {
             throw new VaultPluginException("Fetching from Vault failed for key '" + key + "'");
         }
         return s;
     }
 
+    /**
+     * Look up the secret key:value map. A copy returned by a lookup, see {@link #withContext},
+     * serves every key of a multi-key credential from one read for at most
+     * {@link #SNAPSHOT_TTL_MILLIS}. Other instances read it every time.
+     * @return vault secret value
+     */
+    @NonNull
+    protected Map<String, String> getVaultSecretSnapshot() {
+        if (!lookupCopy || SNAPSHOT_TTL_MILLIS <= 0) {
+            return getVaultSecretValue();
+        }
+        Snapshot current = this.snapshot;
+        if (current == null || current.isExpired()) {
+            synchronized (this) {
+                current = this.snapshot;
+                if (current == null || current.isExpired()) {
+                    current = new Snapshot(getVaultSecretValue());
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current.values;
+    }
+
     /**
      * Look up the secret key:value map.
      * @return vault secret value
@@ -111,4 +179,18 @@ public abstract class AbstractVaultBaseStandardCredentials extends BaseStandardC
     public String getDisplayName() {
         return this.path;
     }
+
+    private static final class Snapshot {
+
+        private final Map<String, String> values;
+        private final long readAt = System.nanoTime();
+
+        Snapshot(Map<String, String> values) {
+            this.values = values;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - readAt >= TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_TTL_MILLIS);
+        }
+    }
 }
@@ -5,20 +5,23 @@ import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsUnavailableException;
 import com.cloudbees.plugins.credentials.matchers.IdMatcher;
 import com.datapipe.jenkins.vault.VaultAccessor;
+import com.datapipe.jenkins.vault.VaultAccessorPool;
 import com.datapipe.jenkins.vault.configuration.VaultConfigResolver;
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import hudson.ExtensionList;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.security.ACL;
 import io.github.jopenlibs.vault.VaultConfig;
+import io.github.jopenlibs.vault.VaultException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
@@ -32,15 +35,7 @@ public class VaultHelper {
                                               @CheckForNull String namespace,
                                               @CheckForNull Integer engineVersion,
                                               @NonNull ItemGroup<Item> context) {
-        VaultConfiguration configuration = null;
-        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
-            if (configuration != null) {
-                configuration = configuration
-                        .mergeWithParent(resolver.getVaultConfig(context));
-            } else {
-                configuration = resolver.getVaultConfig(context);
-            }
-        }
+        VaultConfiguration configuration = VaultConfigResolver.resolve(context);
 
         if (configuration == null) {
             throw new IllegalStateException("Vault plugin has not been configured.");
@@ -56,6 +51,66 @@ public class VaultHelper {
                 secretPath, engineVersion);
         LOGGER.info(msg);
 
+        try {
+            VaultConfiguration effectiveConfiguration = configuration;
+            // every value newVaultAccessor reads
+            List<?> poolKey = Arrays.asList(
+                    context == null ? null : context.getFullName(),
+                    configuration.getVaultUrl(),
+                    configuration.getVaultCredentialId(),
+                    configuration.getVaultCredential(),
+                    configuration.getVaultNamespace(),
+                    configuration.getPrefixPath(),
+                    configuration.getSkipSslVerification(),
+                    configuration.getTimeout(),
+                    configuration.getEngineVersion(),
+                    configuration.getMaxRetries(),
+                    configuration.getRetryIntervalMilliseconds(),
+                    configuration.getEffectiveCacheTtl(),
+                    configuration.getCacheMaxSize(),
+                    configuration.getUseHttp2(),
+                    prefixPath,
+                    namespace,
+                    engineVersion);
+
+            // the engine version is part of the key since VaultAccessor.read sets it on the
+            // shared VaultConfig
+            Supplier<VaultAccessor> factory =
+                () -> newVaultAccessor(effectiveConfiguration, prefixPath, namespace, context);
+            try {
+                return VaultAccessorPool.get(poolKey, factory).read(secretPath, engineVersion)
+                    .getData();
+            } catch (VaultPluginException e) {
+                VaultAccessorPool.invalidate(poolKey);
+                if (!isPermissionDenied(e)) {
+                    throw e;
+                }
+            }
+            // the token of the pooled accessor may have expired or been revoked, log in again
+            try {
+                return VaultAccessorPool.get(poolKey, factory).read(secretPath, engineVersion)
+                    .getData();
+            } catch (VaultPluginException e) {
+                VaultAccessorPool.invalidate(poolKey);
+                throw e;
+            }
+        } catch (VaultPluginException vpe) {
+            throw vpe;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    private static boolean isPermissionDenied(VaultPluginException e) {
+        return e.getCause() instanceof VaultException
+            && ((VaultException) e.getCause()).getHttpStatusCode() == 403;
+    }
+
+    private static VaultAccessor newVaultAccessor(@NonNull VaultConfiguration configuration,
+                                                  @CheckForNull String prefixPath,
+                                                  @CheckForNull String namespace,
+                                                  ItemGroup<Item> context) {
         try {
             VaultConfig vaultConfig = configuration.getVaultConfig();
 
@@ -76,15 +131,13 @@ public class VaultHelper {
             vaultAccessor.setMaxRetries(configuration.getMaxRetries());
             vaultAccessor.setRetryIntervalMilliseconds(
                     configuration.getRetryIntervalMilliseconds());
-            vaultAccessor.init();
-
-            return vaultAccessor.read(secretPath, engineVersion).getData();
-        } catch (VaultPluginException vpe) {
-            throw vpe;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            vaultAccessor.setCacheTtl(configuration.getEffectiveCacheTtl());
+            vaultAccessor.setCacheMaxSize(configuration.getCacheMaxSize());
+            vaultAccessor.setUseHttp2(Boolean.TRUE.equals(configuration.getUseHttp2()));
+            return vaultAccessor.init();
+        } catch (VaultException e) {
+            throw new VaultPluginException("Could not set up VaultConfig.", e);
         }
-
     }
 
     static String getVaultSecretKey(@NonNull String secretPath,
@@ -3,6 +3,7 @@ package com.datapipe.jenkins.vault.jcasc.secrets;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,12 +22,12 @@ public class VaultAppRoleAuthenticator extends VaultAuthenticatorWithExpiration
     public void authenticate(Vault vault, VaultConfig config) throws VaultException {
         if (isTokenTTLExpired()) {
             // authenticate
-            currentAuthToken = vault.auth()
-                .loginByAppRole(mountPath, appRole.getAppRole(), appRole.getAppRoleSecret())
-                .getAuthClientToken();
+            AuthResponse response = vault.auth()
+                .loginByAppRole(mountPath, appRole.getAppRole(), appRole.getAppRoleSecret());
+            currentAuthToken = response.getAuthClientToken();
             config.token(currentAuthToken).build();
             LOGGER.log(Level.FINE, "Login to Vault using AppRole/SecretID successful");
-            getTTLExpiryOfCurrentToken(vault);
+            setTTLExpiryOfCurrentToken(vault, config, response);
         } else {
             // make sure current auth token is set in config
             config.token(currentAuthToken).build();
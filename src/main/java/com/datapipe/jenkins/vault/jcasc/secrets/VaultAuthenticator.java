@@ -6,6 +6,11 @@ import io.github.jopenlibs.vault.VaultException;
 
 public interface VaultAuthenticator {
     void authenticate(Vault vault, VaultConfig config) throws VaultException;
+    /**
+     * Record that the current token was used to read secrets.
+     */
+    default void markTokenUsed() {
+    }
     static VaultAuthenticator of(String token) {
         return new VaultSingleTokenAuthenticator(token);
     }
@@ -1,8 +1,14 @@
 package com.datapipe.jenkins.vault.jcasc.secrets;
 
+import com.datapipe.jenkins.vault.TokenRenewal;
+import com.datapipe.jenkins.vault.VaultTransport;
 import io.github.jopenlibs.vault.Vault;
+import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
-import java.util.Calendar;
+import io.github.jopenlibs.vault.response.AuthResponse;
+import io.github.jopenlibs.vault.response.LookupResponse;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,15 +17,19 @@ abstract class VaultAuthenticatorWithExpiration implements VaultAuthenticator {
     private final static Logger LOGGER = Logger.getLogger(VaultAuthenticatorWithExpiration.class.getName());
     protected String mountPath;
 
-    private Calendar tokenExpiration;
-    protected String currentAuthToken;
+    // time the token expires at in milliseconds, 0 if it has to be issued
+    private volatile long tokenExpiresAt;
+    private volatile boolean tokenRenewable;
+    private volatile boolean tokenUsed;
+    private ScheduledFuture<?> renewal;
+    protected volatile String currentAuthToken;
 
     public boolean isTokenTTLExpired() {
-        if (tokenExpiration == null) return true;
+        long expiresAt = tokenExpiresAt;
+        if (expiresAt == 0) return true;
 
         boolean result = true;
-        Calendar now = Calendar.getInstance();
-        long timeDiffInMillis = now.getTimeInMillis() - tokenExpiration.getTimeInMillis();
+        long timeDiffInMillis = System.currentTimeMillis() - expiresAt;
         if (timeDiffInMillis < -2000L) {
             // token will be valid for at least another 2s
             result = false;
@@ -31,20 +41,98 @@ abstract class VaultAuthenticatorWithExpiration implements VaultAuthenticator {
         return result;
     }
 
-    public void getTTLExpiryOfCurrentToken(Vault vault) {
+    @Override
+    public void markTokenUsed() {
+        tokenUsed = true;
+    }
+
+    public void getTTLExpiryOfCurrentToken(Vault vault, VaultConfig config) {
         int tokenTTL = 0;
+        boolean renewable = false;
 
         try {
             // save token TTL
-            tokenTTL = (int)vault.auth().lookupSelf().getTTL();
+            LookupResponse lookup = vault.auth().lookupSelf();
+            tokenTTL = (int) lookup.getTTL();
+            renewable = lookup.isRenewable();
         } catch (VaultException e) {
             LOGGER.log(Level.WARNING, "Could not determine token expiration. " +
                     "Check if token is allowed to access auth/token/lookup-self. " +
                     "Assuming token TTL expired.", e);
         }
 
-        tokenExpiration = Calendar.getInstance();
-        tokenExpiration.add(Calendar.SECOND, tokenTTL);
+        setTokenExpiration(config, tokenTTL, renewable);
+    }
+
+    /**
+     * Record the expiration of a token from its login response, without looking it up.
+     */
+    protected void setTTLExpiryOfCurrentToken(Vault vault, VaultConfig config,
+        AuthResponse response) {
+        setTokenExpiration(config, response.getAuthLeaseDuration(),
+            Boolean.TRUE.equals(response.isAuthRenewable()));
+    }
+
+    private synchronized void setTokenExpiration(VaultConfig config, long tokenTTL,
+        boolean renewable) {
+        tokenExpiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(tokenTTL);
+        tokenRenewable = renewable;
+
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+        renewal = TokenRenewal.schedule(() -> renew(config), tokenTTL);
+    }
+
+    /**
+     * Extend the lifetime of the current token with renew-self, or log in again if it cannot be
+     * renewed, and then revoke the replaced token. A token that was not used to read secrets
+     * since the last renewal is left to expire. Works on a copy of the configuration, which may
+     * be serving reads.
+     */
+    private synchronized void renew(VaultConfig config) {
+        renewal = null;
+        if (!tokenUsed) {
+            LOGGER.log(Level.FINE, "Auth token is idle, not renewing it");
+            return;
+        }
+        tokenUsed = false;
+        try {
+            VaultConfig copy = VaultTransport.copyConfig(config, currentAuthToken);
+            Vault vault = Vault.create(copy);
+            if (tokenRenewable) {
+                try {
+                    AuthResponse response = vault.auth().renewSelf();
+                    setTokenExpiration(copy, response.getAuthLeaseDuration(),
+                        Boolean.TRUE.equals(response.isAuthRenewable()));
+                    LOGGER.log(Level.FINE, "Renewed auth token");
+                    return;
+                } catch (VaultException e) {
+                    LOGGER.log(Level.FINE, "Could not renew auth token, logging in again", e);
+                }
+            }
+            String previous = currentAuthToken;
+            tokenExpiresAt = 0;
+            authenticate(vault, copy);
+            if (previous != null && !previous.equals(currentAuthToken)) {
+                revoke(config, previous);
+            }
+        } catch (VaultException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Background renewal of the auth token failed, " +
+                "it will be re-issued when it is needed", e);
+        }
+    }
+
+    /**
+     * Revoke a token replaced by a new login, so that it does not stay valid until it expires.
+     */
+    private static void revoke(VaultConfig config, String token) {
+        try {
+            Vault.create(VaultTransport.copyConfig(config, token)).auth().revokeSelf();
+            LOGGER.log(Level.FINE, "Revoked the replaced auth token");
+        } catch (VaultException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not revoke the replaced auth token", e);
+        }
     }
 
     @Override
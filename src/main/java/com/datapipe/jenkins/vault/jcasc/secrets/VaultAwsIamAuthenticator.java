@@ -6,6 +6,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,10 +28,11 @@ public class VaultAwsIamAuthenticator extends VaultAuthenticatorWithExpiration {
     public void authenticate(@NonNull Vault vault, @NonNull VaultConfig config) throws VaultException, VaultPluginException {
         if (isTokenTTLExpired()) {
             // authenticate
-            currentAuthToken = AwsHelper.getToken(vault.auth(), null, awsIam.getRole(), awsIam.getServerId(), mountPath);
+            AuthResponse response = AwsHelper.login(vault.auth(), null, awsIam.getRole(), awsIam.getServerId(), mountPath);
+            currentAuthToken = response.getAuthClientToken();
             config.token(currentAuthToken).build();
             LOGGER.log(Level.FINE, "Login to Vault using AWS IAM successful");
-            getTTLExpiryOfCurrentToken(vault);
+            setTTLExpiryOfCurrentToken(vault, config, response);
         } else {
             // make sure current auth token is set in config
             config.token(currentAuthToken).build();
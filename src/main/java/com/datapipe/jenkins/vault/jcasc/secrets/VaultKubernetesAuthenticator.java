@@ -5,6 +5,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -39,12 +40,12 @@ public class VaultKubernetesAuthenticator extends VaultAuthenticatorWithExpirati
                 throw new VaultPluginException("could not get JWT from Service Account Token", e);
             }
             // authenticate
-            currentAuthToken = vault.auth()
-                .loginByJwt(mountPath, kubernetes.getRole(), this.jwt)
-                .getAuthClientToken();
+            AuthResponse response = vault.auth()
+                .loginByJwt(mountPath, kubernetes.getRole(), this.jwt);
+            currentAuthToken = response.getAuthClientToken();
             config.token(currentAuthToken).build();
             LOGGER.log(Level.FINE, "Login to Vault using Kubernetes successful");
-            getTTLExpiryOfCurrentToken(vault);
+            setTTLExpiryOfCurrentToken(vault, config, response);
         } else {
             // make sure current auth token is set in config
             config.token(currentAuthToken).build();
@@ -1,19 +1,50 @@
 package com.datapipe.jenkins.vault.jcasc.secrets;
 
+import com.datapipe.jenkins.vault.VaultTransport;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.Extension;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.LogicalResponse;
 import io.jenkins.plugins.casc.SecretSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.security.CryptoConfidentialKey;
+import jenkins.util.Timer;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -43,23 +74,48 @@ public class VaultSecretSource extends SecretSource {
     private static final String CASC_VAULT_ENGINE_VERSION = "CASC_VAULT_ENGINE_VERSION";
     private static final String CASC_VAULT_PATHS = "CASC_VAULT_PATHS";
     private static final String CASC_VAULT_PATH = "CASC_VAULT_PATH"; // TODO: deprecate!
+    private static final String CASC_VAULT_REFRESH_INTERVAL = "CASC_VAULT_REFRESH_INTERVAL";
+    private static final String CASC_VAULT_MAX_CONCURRENT_READS = "CASC_VAULT_MAX_CONCURRENT_READS";
+    private static final String CASC_VAULT_SNAPSHOT = "CASC_VAULT_SNAPSHOT";
     private static final String DEFAULT_ENGINE_VERSION = "2";
     private static final String DEFAULT_USER_BACKEND = "userpass";
     private static final String DEFAULT_APPROLE_BACKEND = "approle";
     private static final String DEFAULT_KUBERNETES_BACKEND = "kubernetes";
     private static final String DEFAULT_AWS_IAM_BACKEND = "aws";
+    private static final int DEFAULT_MAX_CONCURRENT_READS = 8;
 
-    private Map<String, String> secrets = new HashMap<>();
+    private static final CryptoConfidentialKey SNAPSHOT_KEY =
+        new CryptoConfidentialKey(VaultSecretSource.class, "snapshot");
+    private static final int SNAPSHOT_FORMAT = 1;
+    private static final long INITIAL_RETRY_SECONDS = 10;
+    private static final long MAX_RETRY_SECONDS = 600;
+
+    private volatile SecretMap secrets = SecretMap.EMPTY;
     private Vault vault;
     private VaultConfig vaultConfig;
     private VaultAuthenticator vaultAuthenticator;
     private String[] vaultPaths;
     private Properties prop;
     private boolean usingVaultAgent;
+    private int engineVersion;
+    private long refreshInterval;
+    private int maxConcurrentReads;
+    private boolean snapshot;
+    // the settings the secrets are read with, null if Vault is not configured
+    private List<Object> source;
+    // the settings the current secrets were read with
+    private List<Object> loadedFrom;
+    // secrets of each path in the order of CASC_VAULT_PATHS
+    private Map<String, PathSecrets> pathSecrets = Collections.emptyMap();
+    private ScheduledFuture<?> refresh;
+    // retry of the read after starting from the snapshot
+    private ScheduledFuture<?> retry;
 
     private void configureVault() {
         // Read config file/env
         prop = new Properties();
+        source = null;
+        snapshot = false;
         Optional<String> vaultFile = Optional.ofNullable(System.getenv(CASC_VAULT_FILE));
         vaultFile.ifPresent(this::readPropertiesFromVaultFile);
 
@@ -81,10 +137,16 @@ public class VaultSecretSource extends SecretSource {
 
         String vaultEngineVersion = vaultEngineVersionOpt.orElse(DEFAULT_ENGINE_VERSION);
         this.vaultPaths = vaultPaths.get();
+        refreshInterval = getLong(CASC_VAULT_REFRESH_INTERVAL, 0);
+        maxConcurrentReads = (int) getLong(CASC_VAULT_MAX_CONCURRENT_READS,
+            DEFAULT_MAX_CONCURRENT_READS);
+        snapshot = getVariable(CASC_VAULT_SNAPSHOT).map(Boolean::parseBoolean).orElse(false);
+        source = Arrays.asList(vaultUrl.get(), vaultNamespace.orElse(null),
+            vaultPrefixPath.orElse(null), vaultEngineVersion, Arrays.asList(this.vaultPaths));
         determineAuthenticator();
 
         // configure vault client
-        vaultConfig = new VaultConfig().address(vaultUrl.get());
+        vaultConfig = VaultTransport.newVaultConfig(vaultUrl.get(), false);
         try {
             LOGGER.log(Level.FINE, "Attempting to connect to Vault: {0}", vaultUrl);
             if (vaultNamespace.isPresent()) {
@@ -92,7 +154,8 @@ public class VaultSecretSource extends SecretSource {
                 LOGGER.log(Level.FINE, "Using namespace with Vault: {0}", vaultNamespace);
             }
 
-            vaultConfig.engineVersion(Integer.parseInt(vaultEngineVersion));
+            engineVersion = Integer.parseInt(vaultEngineVersion);
+            vaultConfig.engineVersion(engineVersion);
             LOGGER.log(Level.FINE, "Using engine version: {0}", vaultEngineVersion);
 
             if (vaultPrefixPath.isPresent()) {
@@ -174,39 +237,313 @@ public class VaultSecretSource extends SecretSource {
             .of(new VaultAwsIam(role, serverId.orElse("")), mount.orElse(DEFAULT_AWS_IAM_BACKEND)));
     }
 
+    private long getLong(String key, long defaultValue) {
+        Optional<String> value = getVariable(key);
+        try {
+            return value.map(Long::parseLong).orElse(defaultValue);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid {0}: {1}",
+                new Object[]{key, value.get()});
+            return defaultValue;
+        }
+    }
+
     private void readSecretsFromVault() {
         Optional<String[]> vaultPathsOpt = Optional.ofNullable(vaultPaths);
 
-        if (vaultPathsOpt.isPresent()) {
-            try {
-                // refresh map
-                secrets = new HashMap<>();
-
-                // Parse secrets
-                for (String vaultPath : vaultPathsOpt.get()) {
-                    Map<String, String> nextSecrets = vault.logical().read(vaultPath).getData();
-                    Map<String, String> nextSecretsFullPath = new HashMap<>();
-                    // create item where key is full path to secret
-                    for (Map.Entry<String, String> secretEntry : nextSecrets.entrySet()) {
-                        nextSecretsFullPath.put(vaultPath + "/" + secretEntry.getKey(), secretEntry.getValue());
-                    }
-                    // check if we overwrite an existing key from another path
-                    // TODO(casz) handle error response
-                    for (String key : nextSecrets.keySet()) {
-                        if (secrets.containsKey(key)) {
-                            LOGGER.log(Level.FINE, "Key {0} exists in multiple vault paths. Use full path ({1}) to access value.",
-                                    new Object[]{key, vaultPath + "/" + key});
-                        }
-                    }
+        if (vaultPathsOpt.isPresent()
+            && publish(readPaths(knownPathSecrets(), new AtomicBoolean()))) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * @return the secrets read with the current settings, which are kept for paths that fail
+     */
+    private Map<String, PathSecrets> knownPathSecrets() {
+        return source != null && source.equals(loadedFrom)
+            ? pathSecrets : Collections.emptyMap();
+    }
 
-                    // merge
-                    secrets.putAll(nextSecrets);
-                    secrets.putAll(nextSecretsFullPath);
+    /**
+     * Re-read the secrets in background. Paths of a K/V version 2 engine are only read again when
+     * the version in their metadata changed, and the secrets are replaced only when one changed,
+     * so that {@link #reveal} never waits for Vault.
+     * @return whether every path was read, or there is nothing to read
+     */
+    synchronized boolean refresh() {
+        if (source == null || (vaultAuthenticator == null && !usingVaultAgent)) {
+            return true;
+        }
+        try {
+            if (vaultAuthenticator != null) {
+                vaultAuthenticator.authenticate(vault, vaultConfig);
+            }
+            AtomicBoolean failed = new AtomicBoolean();
+            if (publish(readPaths(knownPathSecrets(), failed))) {
+                writeSnapshot();
+            }
+            return !failed.get();
+        } catch (VaultException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to refresh secrets from Vault, keeping current ones",
+                e);
+            return false;
+        }
+    }
+
+    /**
+     * Read Vault after starting from the snapshot. Without a refresh interval, failed reads are
+     * retried with exponential backoff until every path was read.
+     * @param delaySeconds the delay before the next retry
+     */
+    private synchronized void readAfterSnapshot(long delaySeconds) {
+        retry = null;
+        if (refresh() || refresh != null) {
+            return;
+        }
+        LOGGER.log(Level.WARNING, "Could not read every secret from Vault, using the snapshot and "
+            + "retrying in {0}s", delaySeconds);
+        long next = Math.min(delaySeconds * 2, MAX_RETRY_SECONDS);
+        retry = Timer.get().schedule(() -> readAfterSnapshot(next), delaySeconds,
+            TimeUnit.SECONDS);
+    }
+
+    private void scheduleRefresh() {
+        if (refresh != null) {
+            refresh.cancel(false);
+            refresh = null;
+        }
+        if (source != null && refreshInterval > 0) {
+            refresh = Timer.get().scheduleWithFixedDelay(this::refresh, refreshInterval,
+                refreshInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Read all paths, up to {@code CASC_VAULT_MAX_CONCURRENT_READS} at the same time. The result
+     * is in the order of {@code CASC_VAULT_PATHS} whatever the order the reads complete in, so
+     * that keys of later paths take precedence like with sequential reads.
+     * @param known the secrets read before, kept for paths that cannot be read
+     * @param failed set if a path cannot be read
+     * @return the secrets of each path that could be read now or before
+     */
+    private Map<String, PathSecrets> readPaths(Map<String, PathSecrets> known,
+        AtomicBoolean failed) {
+        List<CompletableFuture<PathSecrets>> reads = new ArrayList<>();
+        int threads = Math.min(maxConcurrentReads, vaultPaths.length);
+        ExecutorService executor = threads <= 1 ? null : Executors.newFixedThreadPool(threads,
+            new NamingThreadFactory(new DaemonThreadFactory(), "VaultSecretSource.read"));
+        try {
+            for (String vaultPath : vaultPaths) {
+                Supplier<PathSecrets> read = () -> readPath(vaultPath, known.get(vaultPath),
+                    failed);
+                reads.add(executor == null ? CompletableFuture.completedFuture(read.get())
+                    : CompletableFuture.supplyAsync(read, executor));
+            }
+            Map<String, PathSecrets> next = new LinkedHashMap<>();
+            for (int i = 0; i < vaultPaths.length; i++) {
+                PathSecrets read = reads.get(i).join();
+                if (read != null) {
+                    next.put(vaultPaths[i], read);
+                }
+            }
+            return next;
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return the secrets of the path, or the known ones if it cannot be read
+     */
+    private PathSecrets readPath(String vaultPath, PathSecrets known, AtomicBoolean failed) {
+        if (vaultAuthenticator != null) {
+            vaultAuthenticator.markTokenUsed();
+        }
+        // versions are only needed to skip unchanged paths when refreshing
+        long version = refreshInterval > 0 && engineVersion == 2 ? readVersion(vaultPath) : -1;
+        if (known != null && version > 0 && version == known.version) {
+            return known;
+        }
+        try {
+            Map<String, String> data = VaultMetrics.time(VaultMetrics.CASC_READ,
+                () -> vault.logical().read(vaultPath)).getData();
+            // TODO(casz) handle error response
+            return new PathSecrets(data, version);
+        } catch (VaultException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to fetch secret from Vault path " + vaultPath, e);
+            failed.set(true);
+            return known;
+        }
+    }
+
+    /**
+     * @return the current version of a K/V version 2 secret, or -1 if it is unknown
+     */
+    private long readVersion(String vaultPath) {
+        if (!VaultTransport.supportsHttp2(vaultConfig)) {
+            return -1;
+        }
+        try {
+            LogicalResponse response = VaultMetrics.time(VaultMetrics.CASC_READ,
+                () -> VaultTransport.readMetadata(vaultConfig, vaultPath, 0, 0));
+            if (response.getRestResponse().getStatus() == 200) {
+                String version = response.getData().get("current_version");
+                if (version != null) {
+                    return Long.parseLong(version);
                 }
-            } catch (VaultException e) {
-                LOGGER.log(Level.WARNING, "Unable to fetch secret from Vault", e);
             }
+        } catch (VaultException | NumberFormatException e) {
+            LOGGER.log(Level.FINE, "Could not read metadata of " + vaultPath, e);
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the secrets changed
+     */
+    private boolean publish(Map<String, PathSecrets> next) {
+        Map<String, Map<String, String>> byPath = new LinkedHashMap<>();
+        for (Map.Entry<String, PathSecrets> entry : next.entrySet()) {
+            byPath.put(entry.getKey(), entry.getValue().data);
+        }
+        SecretMap merged = new SecretMap(byPath);
+        pathSecrets = next;
+        loadedFrom = source;
+        if (!merged.equals(secrets)) {
+            LOGGER.log(Level.FINE, "Secrets read from Vault changed");
+            secrets = merged;
+            return true;
+        }
+        return false;
+    }
+
+    @CheckForNull
+    private File getSnapshotFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (!snapshot || jenkins == null) {
+            return null;
         }
+        return new File(jenkins.getRootDir(), VaultSecretSource.class.getName() + ".snapshot");
+    }
+
+    /**
+     * Delete the snapshot left by an earlier configuration with {@code CASC_VAULT_SNAPSHOT}.
+     */
+    private static void deleteSnapshot() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        File file = new File(jenkins.getRootDir(),
+            VaultSecretSource.class.getName() + ".snapshot");
+        try {
+            if (Files.deleteIfExists(file.toPath())) {
+                LOGGER.log(Level.FINE, "Deleted snapshot of secrets " + file);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete snapshot of secrets " + file, e);
+        }
+    }
+
+    /**
+     * Publish the secrets of the snapshot, if it was taken with the current settings.
+     * @return whether the snapshot was used
+     */
+    private boolean readSnapshot() {
+        File file = getSnapshotFile();
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != SNAPSHOT_FORMAT) {
+                return false;
+            }
+            byte[] iv = new byte[in.readUnsignedByte()];
+            in.readFully(iv);
+            byte[] plain = SNAPSHOT_KEY.decrypt(iv).doFinal(in.readAllBytes());
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(plain));
+            if (!String.valueOf(source).equals(readString(data))) {
+                LOGGER.log(Level.FINE, "Ignoring snapshot of secrets read with other settings");
+                return false;
+            }
+            Map<String, PathSecrets> next = new LinkedHashMap<>();
+            for (int paths = data.readInt(); paths > 0; paths--) {
+                String vaultPath = readString(data);
+                long version = data.readLong();
+                Map<String, String> values = new HashMap<>();
+                for (int keys = data.readInt(); keys > 0; keys--) {
+                    values.put(readString(data), readString(data));
+                }
+                next.put(vaultPath, new PathSecrets(values, version));
+            }
+            publish(next);
+            LOGGER.log(Level.FINE, "Using snapshot of secrets until Vault is read");
+            return true;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read snapshot of secrets " + file, e);
+            return false;
+        }
+    }
+
+    private void writeSnapshot() {
+        File file = getSnapshotFile();
+        if (file == null || secrets.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(plain);
+            writeString(data, String.valueOf(source));
+            data.writeInt(pathSecrets.size());
+            for (Map.Entry<String, PathSecrets> entry : pathSecrets.entrySet()) {
+                writeString(data, entry.getKey());
+                data.writeLong(entry.getValue().version);
+                data.writeInt(entry.getValue().data.size());
+                for (Map.Entry<String, String> value : entry.getValue().data.entrySet()) {
+                    writeString(data, value.getKey());
+                    writeString(data, value.getValue());
+                }
+            }
+            byte[] iv = SNAPSHOT_KEY.newIv();
+            byte[] encrypted = SNAPSHOT_KEY.encrypt(iv).doFinal(plain.toByteArray());
+
+            // temporary files are only readable by their owner
+            Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                    out.writeInt(SNAPSHOT_FORMAT);
+                    out.writeByte(iv.length);
+                    out.write(iv);
+                    out.write(encrypted);
+                }
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // left over if writing or moving failed
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.log(Level.WARNING, "Could not write snapshot of secrets " + file, e);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Corrupted snapshot of secrets");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
     }
 
     private void readPropertiesFromVaultFile(String vaultFile) {
@@ -226,12 +563,30 @@ public class VaultSecretSource extends SecretSource {
         return Optional.ofNullable(secrets.get(secret));
     }
 
+    /**
+     * @return the secrets by key and by full path, not backed by this source
+     */
     public Map<String, String> getSecrets() {
-        return secrets;
+        return secrets.toMap();
     }
 
+    /**
+     * Replace the secrets, which are then looked up by key only.
+     * @param secrets the secrets by key
+     */
     public void setSecrets(Map<String, String> secrets) {
-        this.secrets = secrets;
+        this.secrets = secrets == null ? SecretMap.EMPTY
+            : new SecretMap(Collections.singletonMap(null, copyOf(secrets)));
+    }
+
+    private static Map<String, String> copyOf(Map<String, String> data) {
+        Map<String, String> copy = new HashMap<>();
+        data.forEach((key, value) -> {
+            if (key != null && value != null) {
+                copy.put(key, value);
+            }
+        });
+        return Map.copyOf(copy);
     }
 
     private Optional<String> getVariable(String key) {
@@ -243,8 +598,27 @@ public class VaultSecretSource extends SecretSource {
     }
 
     @Override
-    public void init() {
+    public synchronized void init() {
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
         configureVault();
+        scheduleRefresh();
+        if (!snapshot) {
+            deleteSnapshot();
+        }
+
+        if (refresh != null && source.equals(loadedFrom)) {
+            // the refresher keeps the secrets up-to-date, do not wait for Vault on reload
+            LOGGER.log(Level.FINE, "Using secrets refreshed in background");
+            return;
+        }
+        if (source != null && !source.equals(loadedFrom) && readSnapshot()) {
+            // answer from the snapshot at startup, and read Vault in background
+            Timer.get().execute(() -> readAfterSnapshot(INITIAL_RETRY_SECONDS));
+            return;
+        }
 
         // Ensure secrets are up-to-date and Check vault authentication
         if (vaultAuthenticator != null) {
@@ -258,4 +632,90 @@ public class VaultSecretSource extends SecretSource {
             readSecretsFromVault();
         }
     }
+
+    /**
+     * The secrets of one path, with the K/V version 2 version they were read at.
+     */
+    private static final class PathSecrets {
+
+        private final Map<String, String> data;
+        private final long version;
+
+        PathSecrets(Map<String, String> data, long version) {
+            this.data = copyOf(data);
+            this.version = version;
+        }
+    }
+
+    /**
+     * The secrets of all paths, immutable so that they are published at once and revealed
+     * without locking. Each value is only held by the map of its path. Full paths are resolved
+     * to that map, and short keys through an index to the map of the last path that has the key.
+     */
+    static final class SecretMap {
+
+        static final SecretMap EMPTY = new SecretMap(Collections.emptyMap());
+
+        // null is the path of secrets set directly, which are only looked up by key
+        private final Map<String, Map<String, String>> byPath;
+        private final Map<String, Map<String, String>> byKey;
+
+        SecretMap(Map<String, Map<String, String>> byPath) {
+            Map<String, Map<String, String>> byKey = new HashMap<>();
+            for (Map.Entry<String, Map<String, String>> entry : byPath.entrySet()) {
+                for (String key : entry.getValue().keySet()) {
+                    if (byKey.put(key, entry.getValue()) != null) {
+                        LOGGER.log(Level.FINE, "Key {0} exists in multiple vault paths. "
+                                + "Use full path ({1}) to access value.",
+                            new Object[]{key, entry.getKey() + "/" + key});
+                    }
+                }
+            }
+            Map<String, Map<String, String>> paths = new LinkedHashMap<>(byPath);
+            paths.remove(null);
+            this.byPath = Collections.unmodifiableMap(paths);
+            this.byKey = Map.copyOf(byKey);
+        }
+
+        @CheckForNull
+        String get(String name) {
+            // the longest configured path wins if a key contains a slash
+            for (int slash = name.lastIndexOf('/'); slash > 0;
+                slash = name.lastIndexOf('/', slash - 1)) {
+                Map<String, String> data = byPath.get(name.substring(0, slash));
+                String value = data == null ? null : data.get(name.substring(slash + 1));
+                if (value != null) {
+                    return value;
+                }
+            }
+            Map<String, String> data = byKey.get(name);
+            return data == null ? null : data.get(name);
+        }
+
+        boolean isEmpty() {
+            return byKey.isEmpty();
+        }
+
+        Map<String, String> toMap() {
+            Map<String, String> map = new HashMap<>();
+            byKey.forEach((key, data) -> map.put(key, data.get(key)));
+            byPath.forEach((path, data) -> data.forEach((key, value) ->
+                map.put(path + "/" + key, value)));
+            return Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SecretMap that = (SecretMap) o;
+            // maps ignore the order of the paths, which decides the index
+            return byPath.equals(that.byPath) && byKey.equals(that.byKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return byPath.hashCode();
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.datapipe.jenkins.vault.jcasc.secrets;
 import io.github.jopenlibs.vault.Vault;
 import io.github.jopenlibs.vault.VaultConfig;
 import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.AuthResponse;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -24,12 +25,12 @@ public class VaultUserPassAuthenticator extends VaultAuthenticatorWithExpiration
     public void authenticate(Vault vault, VaultConfig config) throws VaultException {
         if (isTokenTTLExpired()) {
             // authenticate
-            currentAuthToken = vault.auth()
-                .loginByUserPass(userPass.getUsername(), userPass.getPassword(), mountPath)
-                .getAuthClientToken();
+            AuthResponse response = vault.auth()
+                .loginByUserPass(userPass.getUsername(), userPass.getPassword(), mountPath);
+            currentAuthToken = response.getAuthClientToken();
             config.token(currentAuthToken).build();
             LOGGER.log(Level.FINE, "Login to Vault using AppRole/SecretID successful");
-            getTTLExpiryOfCurrentToken(vault);
+            setTTLExpiryOfCurrentToken(vault, config, response);
         } else {
             // make sure current auth token is set in config
             config.token(currentAuthToken).build();
@@ -1,16 +1,22 @@
 package com.datapipe.jenkins.vault.log;
 
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.console.ConsoleLogFilter;
+import hudson.console.LineTransformationOutputStream;
 import hudson.model.Run;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serial;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.plugins.credentialsbinding.masking.SecretPatterns;
 
 /*The logic in this class is borrowed from https://github.com/jenkinsci/credentials-binding-plugin/*/
@@ -20,10 +26,20 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Mask secrets with {@link SecretMasker} on the encoded output instead of matching a regex on
+     * every decoded line. Only applies to UTF-8 and single byte charsets.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static boolean USE_AUTOMATON = SystemProperties.getBoolean(
+        MaskingConsoleLogFilter.class.getName() + ".useAutomaton");
+
     private final String charsetName;
     private final List<String> valuesToMask;
     private Pattern pattern;
     private List<String> valuesToMaskInUse;
+    private transient SecretMasker masker;
+    private transient List<String> valuesToMaskInMasker;
 
     public MaskingConsoleLogFilter(final String charsetName,
         List<String> valuesToMask) {
@@ -35,15 +51,34 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
     private synchronized Pattern updatePattern() {
         if (!valuesToMask.equals(valuesToMaskInUse)) {
             List<String> values = valuesToMask.stream().filter(Objects::nonNull).collect(Collectors.toList());
-            pattern = values.isEmpty() ? null : SecretPatterns.getAggregateSecretPattern(values);
+            try (VaultMetrics.Sample sample = VaultMetrics.start(VaultMetrics.MASKING)) {
+                pattern = values.isEmpty() ? null
+                    : SecretPatterns.getAggregateSecretPattern(values);
+                sample.success();
+            }
             valuesToMaskInUse = new ArrayList<>(valuesToMask);
         }
         return pattern;
     }
 
+    private synchronized SecretMasker updateMasker() {
+        if (!valuesToMask.equals(valuesToMaskInMasker)) {
+            List<String> values = valuesToMask.stream().filter(Objects::nonNull).collect(Collectors.toList());
+            try (VaultMetrics.Sample sample = VaultMetrics.start(VaultMetrics.MASKING)) {
+                masker = SecretMasker.create(values, Charset.forName(charsetName));
+                sample.success();
+            }
+            valuesToMaskInMasker = new ArrayList<>(valuesToMask);
+        }
+        return masker;
+    }
+
     @Override
     public OutputStream decorateLogger(Run run,
         final OutputStream logger) throws IOException, InterruptedException {
+        if (USE_AUTOMATON && SecretMasker.supports(Charset.forName(charsetName))) {
+            return new MaskingOutputStream(logger, this::updateMasker);
+        }
         return new SecretPatterns.MaskingOutputStream(logger,
                 // Only return a non-null pattern once there are secrets to mask. When a non-null
                 // pattern is returned it is cached and not supplied again. In cases like
@@ -56,4 +91,28 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
             charsetName);
     }
 
+    private static class MaskingOutputStream extends LineTransformationOutputStream.Delegating {
+
+        private final Supplier<SecretMasker> maskerSupplier;
+        private SecretMasker masker;
+
+        MaskingOutputStream(OutputStream out, Supplier<SecretMasker> maskerSupplier) {
+            super(out);
+            this.maskerSupplier = maskerSupplier;
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            // like SecretPatterns.MaskingOutputStream, keep asking until there are secrets to mask
+            if (masker == null) {
+                masker = maskerSupplier.get();
+            }
+            if (masker == null) {
+                out.write(b, 0, len);
+            } else {
+                masker.mask(b, len, out);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,215 @@
+package com.datapipe.jenkins.vault.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import org.jenkinsci.plugins.credentialsbinding.masking.SecretPatternFactory;
+import org.jenkinsci.plugins.credentialsbinding.masking.SecretPatterns;
+
+/**
+ * Masks secrets in encoded console lines with an Aho-Corasick automaton, without decoding the
+ * bytes to a String.
+ *
+ * <p>At every position the longest secret starting there is masked, and scanning resumes after
+ * it, which is what the alternation built by {@link SecretPatterns#getAggregateSecretPattern}
+ * does with its longest-first ordering. Matching bytes is only equivalent to matching characters
+ * for single byte charsets and UTF-8, see {@link #supports(Charset)}.
+ */
+final class SecretMasker {
+
+    private static final int ROOT = 0;
+
+    private final byte[] mask;
+
+    // sparse transitions of each state, the keys are sorted so they can be binary searched
+    private final byte[][] keys;
+    private final int[][] targets;
+    // transitions of the root state, indexed by unsigned byte value
+    private final int[] rootTargets = new int[256];
+    private final int[] fail;
+    // length of the value ending in this state, or 0
+    private final int[] length;
+    // nearest state on the failure chain that ends a value, or -1
+    private final int[] output;
+
+    private SecretMasker(byte[] mask, List<byte[]> patterns) {
+        this.mask = mask;
+
+        List<List<Byte>> edgeKeys = new ArrayList<>();
+        List<List<Integer>> edgeTargets = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        edgeKeys.add(new ArrayList<>());
+        edgeTargets.add(new ArrayList<>());
+        lengths.add(0);
+        for (byte[] pattern : patterns) {
+            int state = ROOT;
+            for (byte b : pattern) {
+                int index = edgeKeys.get(state).indexOf(b);
+                if (index < 0) {
+                    edgeKeys.get(state).add(b);
+                    edgeTargets.get(state).add(lengths.size());
+                    edgeKeys.add(new ArrayList<>());
+                    edgeTargets.add(new ArrayList<>());
+                    lengths.add(0);
+                    state = lengths.size() - 1;
+                } else {
+                    state = edgeTargets.get(state).get(index);
+                }
+            }
+            lengths.set(state, pattern.length);
+        }
+
+        int states = lengths.size();
+        keys = new byte[states][];
+        targets = new int[states][];
+        length = new int[states];
+        for (int s = 0; s < states; s++) {
+            List<Byte> k = edgeKeys.get(s);
+            List<Integer> t = edgeTargets.get(s);
+            Integer[] order = new Integer[k.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Byte.compare(k.get(a), k.get(b)));
+            keys[s] = new byte[order.length];
+            targets[s] = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[s][i] = k.get(order[i]);
+                targets[s][i] = t.get(order[i]);
+            }
+            length[s] = lengths.get(s);
+        }
+        for (int i = 0; i < keys[ROOT].length; i++) {
+            rootTargets[keys[ROOT][i] & 0xFF] = targets[ROOT][i];
+        }
+
+        // breadth first computation of the failure and output links
+        fail = new int[states];
+        output = new int[states];
+        output[ROOT] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            output[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < keys[state].length; i++) {
+                int child = targets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = step(f, keys[state][i])) < 0) {
+                    f = fail[f];
+                }
+                fail[child] = next;
+                output[child] = length[next] > 0 ? next : output[next];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Build a masker for the given values and all encoded forms of them.
+     * @param values the secret values
+     * @param charset the charset of the console
+     * @return the masker or null if there is nothing to mask
+     */
+    static SecretMasker create(Collection<String> values, Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder();
+        List<byte[]> patterns = new ArrayList<>();
+        for (String value : values) {
+            if (value.isEmpty()) {
+                continue;
+            }
+            for (SecretPatternFactory factory : SecretPatternFactory.all()) {
+                for (String form : factory.getEncodedForms(value)) {
+                    if (!form.isEmpty() && encoder.canEncode(form)) {
+                        patterns.add(form.getBytes(charset));
+                    }
+                }
+            }
+        }
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        return new SecretMasker("****".getBytes(charset), patterns);
+    }
+
+    /**
+     * Whether matching encoded bytes finds exactly the matches found in the decoded text.
+     * @param charset the charset of the console
+     * @return true for UTF-8 and single byte charsets
+     */
+    static boolean supports(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+            || charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    /**
+     * Write a line with every secret replaced by the mask.
+     * @param line the encoded line
+     * @param len the length of the line
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    void mask(byte[] line, int len, OutputStream out) throws IOException {
+        // longest value starting at each position
+        int[] longest = null;
+        int state = ROOT;
+        for (int i = 0; i < len; i++) {
+            byte b = line[i];
+            int next;
+            while ((next = step(state, b)) < 0) {
+                state = fail[state];
+            }
+            state = next;
+            for (int s = length[state] > 0 ? state : output[state]; s >= 0; s = output[s]) {
+                if (longest == null) {
+                    longest = new int[len];
+                }
+                int start = i - length[s] + 1;
+                if (length[s] > longest[start]) {
+                    longest[start] = length[s];
+                }
+            }
+        }
+        if (longest == null) {
+            out.write(line, 0, len);
+            return;
+        }
+
+        int written = 0;
+        int i = 0;
+        while (i < len) {
+            if (longest[i] > 0) {
+                out.write(line, written, i - written);
+                out.write(mask);
+                i += longest[i];
+                written = i;
+            } else {
+                i++;
+            }
+        }
+        out.write(line, written, len - written);
+    }
+
+    /**
+     * @return the next state, or -1 if there is no transition and the failure link must be followed
+     */
+    private int step(int state, byte b) {
+        if (state == ROOT) {
+            return rootTargets[b & 0xFF];
+        }
+        int index = Arrays.binarySearch(keys[state], b);
+        return index < 0 ? -1 : targets[state][index];
+    }
+}
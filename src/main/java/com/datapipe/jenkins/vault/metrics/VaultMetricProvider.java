@@ -0,0 +1,61 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import jenkins.metrics.api.MetricProvider;
+import jenkins.metrics.api.Metrics;
+
+/**
+ * Exposes {@link VaultMetrics} through the metrics plugin, under {@code vault.}: a timer
+ * {@code vault.<operation>.duration} and a meter {@code vault.<operation>.status.<class>} per
+ * operation, registered in the {@link Metrics#metricRegistry() registry} of the plugin, and gauges
+ * for the other statistics.
+ */
+@Extension(optional = true)
+public class VaultMetricProvider extends MetricProvider {
+
+    public VaultMetricProvider() {
+        VaultMetrics.setRecorder(new RegistryRecorder(Metrics::metricRegistry));
+    }
+
+    @NonNull
+    @Override
+    public MetricSet getMetricSet() {
+        Map<String, Metric> metrics = new LinkedHashMap<>();
+        metrics.put("vault.retries", (Gauge<Long>) VaultMetrics::getRetries);
+        metrics.put("vault.inFlight", (Gauge<Integer>) VaultMetrics::getInFlight);
+        metrics.put("vault.tokenCache.hits", (Gauge<Long>) VaultMetrics::getTokenCacheHits);
+        metrics.put("vault.tokenCache.misses", (Gauge<Long>) VaultMetrics::getTokenCacheMisses);
+        metrics.put("vault.tokenCache.hitRatio",
+            (Gauge<Double>) VaultMetrics::getTokenCacheHitRatio);
+        return () -> metrics;
+    }
+
+    /**
+     * Records the operations with the timers and meters of a registry, created on first use.
+     */
+    static final class RegistryRecorder implements VaultMetrics.Recorder {
+
+        private final Supplier<MetricRegistry> registry;
+
+        RegistryRecorder(Supplier<MetricRegistry> registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void record(String operation, long nanos, String statusClass) {
+            MetricRegistry metricRegistry = registry.get();
+            String prefix = "vault." + operation + ".";
+            metricRegistry.timer(prefix + "duration").update(nanos, TimeUnit.NANOSECONDS);
+            metricRegistry.meter(prefix + "status." + statusClass).mark();
+        }
+    }
+}
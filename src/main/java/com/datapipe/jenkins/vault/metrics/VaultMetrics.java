@@ -0,0 +1,231 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.VaultResponse;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controller-wide statistics of Vault operations: latency, responses by HTTP status class,
+ * retries, token cache hits and requests in flight.
+ *
+ * <p>This class does not depend on the metrics plugin. The duration and status of each
+ * operation are handed to the {@link Recorder} that {@link VaultMetricProvider} installs when the
+ * plugin is installed, which records them with the timers and meters of its registry. The other
+ * statistics are kept in memory and exposed as gauges.
+ */
+public final class VaultMetrics {
+
+    /** Secret reads of {@code VaultAccessor}. */
+    public static final String READ = "read";
+    /** Lease revocations. */
+    public static final String REVOKE = "revoke";
+    /** Lease renewals. */
+    public static final String RENEW = "renew";
+    /** Logins of credentials that return the login response. */
+    public static final String LOGIN = "login";
+    /** Token retrieval of credentials that only return a token. */
+    public static final String GET_TOKEN = "getToken";
+    /** Child token creation for policies. */
+    public static final String CREATE_TOKEN = "createToken";
+    /** Token TTL lookups. */
+    public static final String LOOKUP_SELF = "lookupSelf";
+    /** Secret reads of the configuration as code secret source. */
+    public static final String CASC_READ = "cascRead";
+    /** Compilation of the masking pattern or automaton of a build. */
+    public static final String MASKING = "masking";
+
+    static final List<String> STATUSES = Collections.unmodifiableList(Arrays.asList("2xx",
+        "3xx", "4xx", "5xx", "error"));
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder TOKEN_CACHE_HITS = new LongAdder();
+    private static final LongAdder TOKEN_CACHE_MISSES = new LongAdder();
+
+    private static volatile Recorder recorder;
+
+    private VaultMetrics() {
+    }
+
+    /**
+     * Start timing an operation. The sample must be closed, typically with
+     * try-with-resources.
+     * @param operation one of the operation names of this class
+     * @return the running sample
+     */
+    @NonNull
+    public static Sample start(@NonNull String operation) {
+        IN_FLIGHT.incrementAndGet();
+        return new Sample(operation);
+    }
+
+    /**
+     * Time a call to Vault, recording the HTTP status and retries of its response.
+     * @param operation one of the operation names of this class
+     * @param call the call
+     * @return the response of the call
+     * @throws VaultException if the call failed
+     */
+    public static <T extends VaultResponse> T time(@NonNull String operation,
+        @NonNull VaultCall<T> call) throws VaultException {
+        try (Sample sample = start(operation)) {
+            try {
+                T response = call.call();
+                sample.response(response);
+                return response;
+            } catch (VaultException | RuntimeException e) {
+                sample.failure(e);
+                throw e;
+            }
+        }
+    }
+
+    public static void tokenCacheHit() {
+        TOKEN_CACHE_HITS.increment();
+    }
+
+    public static void tokenCacheMiss() {
+        TOKEN_CACHE_MISSES.increment();
+    }
+
+    /**
+     * Set where the operations are recorded.
+     * @param recorder the recorder, null to stop recording
+     */
+    static void setRecorder(@CheckForNull Recorder recorder) {
+        VaultMetrics.recorder = recorder;
+    }
+
+    static int getInFlight() {
+        return IN_FLIGHT.get();
+    }
+
+    static long getRetries() {
+        return RETRIES.sum();
+    }
+
+    static long getTokenCacheHits() {
+        return TOKEN_CACHE_HITS.sum();
+    }
+
+    static long getTokenCacheMisses() {
+        return TOKEN_CACHE_MISSES.sum();
+    }
+
+    /**
+     * @return hits over lookups of the token caches, 0 before the first lookup
+     */
+    static double getTokenCacheHitRatio() {
+        long hits = getTokenCacheHits();
+        long total = hits + getTokenCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    static String getStatusClass(int status) {
+        return status >= 200 && status < 600 ? (status / 100) + "xx" : "error";
+    }
+
+    /**
+     * A call to Vault.
+     */
+    @FunctionalInterface
+    public interface VaultCall<T> {
+
+        T call() throws VaultException;
+    }
+
+    /**
+     * Records the operations, see {@link VaultMetricProvider}.
+     */
+    interface Recorder {
+
+        /**
+         * @param operation one of the operation names of this class
+         * @param nanos the duration of the operation
+         * @param statusClass the HTTP status class of the response, one of {@link #STATUSES}
+         */
+        void record(String operation, long nanos, String statusClass);
+    }
+
+    /**
+     * A running operation.
+     */
+    public static final class Sample implements AutoCloseable {
+
+        private final String operation;
+        private final long startedAt = System.nanoTime();
+        private String statusClass = "error";
+        private boolean closed;
+
+        Sample(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Record the response of the operation, with its HTTP status and retries.
+         * @param response the response, may be null
+         */
+        public void response(@CheckForNull VaultResponse response) {
+            if (response == null) {
+                statusClass = "2xx";
+                return;
+            }
+            if (response.getRestResponse() != null) {
+                statusClass = getStatusClass(response.getRestResponse().getStatus());
+            }
+            if (response.getRetries() > 0) {
+                RETRIES.add(response.getRetries());
+            }
+        }
+
+        /**
+         * Record the failure of the operation, with its HTTP status if known.
+         * @param failure the failure
+         */
+        public void failure(@NonNull Throwable failure) {
+            for (Throwable t = failure; t != null; t = t.getCause()) {
+                if (t instanceof VaultException) {
+                    statusClass = getStatusClass(((VaultException) t).getHttpStatusCode());
+                    return;
+                }
+            }
+            statusClass = "error";
+        }
+
+        /**
+         * Mark an operation without HTTP response as successful.
+         */
+        public void success() {
+            statusClass = "2xx";
+        }
+
+        /**
+         * Stop the sample without recording it, e.g. when nothing was sent to Vault.
+         */
+        public void discard() {
+            if (!closed) {
+                closed = true;
+                IN_FLIGHT.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            IN_FLIGHT.decrementAndGet();
+            Recorder current = recorder;
+            if (current != null) {
+                current.record(operation, System.nanoTime() - startedAt, statusClass);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultAppRoleCredential;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import io.github.jopenlibs.vault.VaultConfig;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class LeaseRenewerTest {
+
+    private FakeVaultServer vault;
+    private VaultConfiguration configuration;
+    private VaultAccessor accessor;
+
+    @Before
+    public void startVault() throws Exception {
+        VaultDisposer.ASYNC_REVOCATION = false;
+        vault = new FakeVaultServer()
+            .putDynamicSecret("database/creds/app", Collections.singletonMap("password", "db"),
+                600);
+        configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setTimeout(0);
+        configuration.fixDefaults();
+        accessor = new VaultAccessor(new VaultConfig().address(vault.getUrl()),
+            new VaultTokenCredential(CredentialsScope.GLOBAL, "token", "",
+                Secret.fromString(FakeVaultServer.ROOT_TOKEN))).init();
+    }
+
+    @After
+    public void stopVault() {
+        VaultDisposer.ASYNC_REVOCATION = true;
+        vault.close();
+    }
+
+    @Test
+    public void shouldRenewTrackedLeasesAndRevokeThemWhenFinished() throws Exception {
+        LogicalResponse response = accessor.read("database/creds/app", 1);
+        LeaseRenewer renewer = LeaseRenewer.create();
+        renewer.track(accessor, configuration, response);
+
+        int requests = vault.getTotalRequestCount();
+        renewer.renew(response.getLeaseId(), 600);
+        assertThat(vault.getTotalRequestCount(), is(requests + 1));
+
+        LeaseRenewer.finish(renewer.getId(), null, StreamTaskListener.NULL);
+        assertThat(vault.getRevokedLeases(), contains(response.getLeaseId()));
+        assertThat(vault.getActiveLeases().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldNotRenewAfterFinish() throws Exception {
+        LogicalResponse response = accessor.read("database/creds/app", 1);
+        LeaseRenewer renewer = LeaseRenewer.create();
+        renewer.track(accessor, configuration, response);
+
+        renewer.finish(null, StreamTaskListener.NULL);
+        int requests = vault.getTotalRequestCount();
+        renewer.renew(response.getLeaseId(), 600);
+
+        assertThat(vault.getTotalRequestCount(), is(requests));
+    }
+
+    @Test
+    public void shouldKeepTokenAliveWhenItExpiresBeforeLeases() throws Exception {
+        vault.addAppRole("approle", "role", "secret-id", "app").setTokenTtl(3, true);
+        VaultAccessor approle = new VaultAccessor(new VaultConfig().address(vault.getUrl()),
+            new VaultAppRoleCredential(CredentialsScope.GLOBAL, "approle", "", "role",
+                Secret.fromString("secret-id"), "approle")).init();
+        LogicalResponse response = approle.read("database/creds/app", 1);
+        LeaseRenewer renewer = LeaseRenewer.create();
+        renewer.track(approle, configuration, response);
+
+        Thread.sleep(1500);
+        assertThat(renewer.renewToken(), is(true));
+        // past the TTL the token was issued with
+        Thread.sleep(2000);
+
+        assertThat(renewer.renew(response.getLeaseId(), 600), is(true));
+        renewer.finish(null, StreamTaskListener.NULL);
+    }
+
+    @Test
+    public void shouldRetryFailedRenewals() throws Exception {
+        LogicalResponse response = accessor.read("database/creds/app", 1);
+        LeaseRenewer renewer = LeaseRenewer.create();
+        renewer.track(accessor, configuration, response);
+        vault.setErrorRate(1.0);
+
+        assertThat(renewer.renew(response.getLeaseId(), 600), is(false));
+
+        vault.setErrorRate(0.0);
+        assertThat(renewer.renew(response.getLeaseId(), 600), is(true));
+        renewer.finish(null, StreamTaskListener.NULL);
+    }
+}
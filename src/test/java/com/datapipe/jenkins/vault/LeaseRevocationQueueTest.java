@@ -0,0 +1,154 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.hudson.plugins.folder.properties.FolderCredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.util.Secret;
+import io.github.jopenlibs.vault.VaultConfig;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class LeaseRevocationQueueTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FakeVaultServer vault;
+    private VaultConfiguration configuration;
+    private VaultTokenCredential credential;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putDynamicSecret("database/creds/app", Collections.singletonMap("password", "db"),
+                600);
+        configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setTimeout(0);
+        configuration.fixDefaults();
+        credential = new VaultTokenCredential(CredentialsScope.GLOBAL, "token", "",
+            Secret.fromString(FakeVaultServer.ROOT_TOKEN));
+        SystemCredentialsProvider.getInstance().getCredentials().add(credential);
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldRevokeQueuedLeasesInBackground() throws Exception {
+        List<String> leaseIds = createLeases(2);
+        LeaseRevocationQueue queue = LeaseRevocationQueue.get();
+
+        queue.add(configuration, credential, null, leaseIds);
+
+        await(() -> queue.size() == 0);
+        assertThat(vault.getActiveLeases().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldKeepFailedRevocationsOnDisk() throws Exception {
+        List<String> leaseIds = createLeases(2);
+        vault.failRevocation(leaseIds.get(1));
+        LeaseRevocationQueue queue = LeaseRevocationQueue.get();
+
+        queue.add(configuration, credential, null, leaseIds);
+
+        await(() -> vault.getRevokedLeases().contains(leaseIds.get(0)) && queue.size() == 1);
+        File file = new File(j.jenkins.getRootDir(), LeaseRevocationQueue.class.getName() + ".xml");
+        String saved = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(saved, containsString(leaseIds.get(1)));
+        assertThat(saved.contains(leaseIds.get(0)), is(false));
+        assertThat(saved, containsString("<credentialId>token</credentialId>"));
+        assertThat(saved, containsString("<timeout>0</timeout>"));
+        assertThat(saved, containsString("<engineVersion>2</engineVersion>"));
+        assertThat(saved.contains(VaultTokenCredential.class.getName()), is(false));
+        assertThat(saved.contains(VaultConfiguration.class.getName()), is(false));
+    }
+
+    @Test
+    public void shouldLookUpCredentialFromItemWhenRevoking() throws Exception {
+        List<String> leaseIds = createLeases(1);
+        SystemCredentialsProvider.getInstance().getCredentials().clear();
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        for (CredentialsStore store : CredentialsProvider.lookupStores(folder)) {
+            if (store.getProvider() instanceof FolderCredentialsProvider
+                && store.getContext() == folder) {
+                store.addCredentials(Domain.global(), credential);
+            }
+        }
+        LeaseRevocationQueue queue = LeaseRevocationQueue.get();
+
+        queue.add(configuration, credential, folder.getFullName(), leaseIds);
+
+        await(() -> queue.size() == 0);
+        assertThat(vault.getRevokedLeases(), contains(leaseIds.get(0)));
+    }
+
+    @Test
+    public void shouldDropInlineCredentialLeasesAfterRestart() throws Exception {
+        List<String> leaseIds = createLeases(1);
+        vault.failRevocation(leaseIds.get(0));
+        VaultConfiguration inline = new VaultConfiguration(configuration);
+        inline.setVaultCredential(credential);
+        LeaseRevocationQueue queue = LeaseRevocationQueue.get();
+
+        queue.add(inline, credential, null, leaseIds);
+        assertThat(queue.size(), is(1));
+
+        // a new instance loads the queue from disk, as after a restart
+        assertThat(new LeaseRevocationQueue().size(), is(0));
+    }
+
+    @Test
+    public void shouldBackOffExponentially() {
+        assertThat(LeaseRevocationQueue.getBackoffMillis(1), is(30_000L));
+        assertThat(LeaseRevocationQueue.getBackoffMillis(3), is(120_000L));
+        assertThat(LeaseRevocationQueue.getBackoffMillis(20), is(3_600_000L));
+    }
+
+    private List<String> createLeases(int count) {
+        VaultAccessor accessor = new VaultAccessor(
+            new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN), null)
+            .init();
+        List<String> leaseIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            leaseIds.add(accessor.read("database/creds/app", 1).getLeaseId());
+        }
+        return leaseIds;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("condition not met in time");
+    }
+}
@@ -0,0 +1,144 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.credentials.VaultAppRoleCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.util.Secret;
+import io.github.jopenlibs.vault.VaultConfig;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * {@link VaultAccessor} against the in-process {@link FakeVaultServer}, without Docker.
+ */
+public class VaultAccessorFakeVaultTest {
+
+    private FakeVaultServer vault;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putSecret("secret/app", Collections.singletonMap("password", "v2-value"))
+            .putSecret("kv/app", Collections.singletonMap("password", "v1-value"))
+            .addAppRole("approle", "role-id", "secret-id-1", "app");
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldReadKvV1AndV2Secrets() {
+        VaultAccessor accessor = new VaultAccessor(
+            new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN), null)
+            .init();
+
+        assertThat(accessor.read("secret/app", 2).getData(), hasEntry("password", "v2-value"));
+        assertThat(accessor.read("kv/app", 1).getData(), hasEntry("password", "v1-value"));
+        assertThat(vault.getRequestCount("secret/data/app"), is(1));
+    }
+
+    @Test
+    public void shouldLoginWithAppRoleInOneRequest() {
+        VaultAppRoleCredential credential = new VaultAppRoleCredential(CredentialsScope.GLOBAL,
+            "approle", "", "role-id", Secret.fromString("secret-id-1"), "approle");
+        VaultAccessor accessor = new VaultAccessor(new VaultConfig().address(vault.getUrl()),
+            credential).init();
+
+        assertThat(accessor.read("secret/app", 2).getData(), hasEntry("password", "v2-value"));
+        assertThat(vault.getRequestCount("auth/approle/login"), is(1));
+        assertThat(vault.getRequestCount("auth/token/lookup-self"), is(0));
+    }
+
+    @Test
+    public void shouldReportInjectedFailures() {
+        VaultAccessor accessor = new VaultAccessor(
+            new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN), null)
+            .init();
+        vault.setErrorRate(1.0);
+
+        assertThrows(VaultPluginException.class, () -> accessor.read("secret/app", 2));
+    }
+
+    @Test
+    public void shouldReadWithHttp2Transport() {
+        VaultAccessor accessor = new VaultAccessor(
+            new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN), null);
+        accessor.setUseHttp2(true);
+        accessor.init();
+
+        assertThat(accessor.read("secret/app", 2).getData(), hasEntry("password", "v2-value"));
+        assertThat(accessor.read("kv/app", 1).getData(), hasEntry("password", "v1-value"));
+        assertThat(accessor.read("kv/missing", 1).getRestResponse().getStatus(), is(404));
+        assertThat(vault.getRequestCount("secret/data/app"), is(1));
+
+        vault.setErrorRate(1.0);
+        assertThrows(VaultPluginException.class, () -> accessor.read("kv/app", 1));
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentIdenticalReads() throws Exception {
+        vault.setLatency(500);
+
+        List<LogicalResponse> responses = readConcurrently("secret/app", 2, 4);
+
+        for (LogicalResponse response : responses) {
+            assertThat(response.getData(), hasEntry("password", "v2-value"));
+        }
+        assertThat(vault.getRequestCount("secret/data/app"), is(1));
+    }
+
+    @Test
+    public void shouldNotShareLeasesBetweenConcurrentReads() throws Exception {
+        vault.putDynamicSecret("database/creds/app", Collections.singletonMap("password", "db"),
+            60).setLatency(500);
+
+        List<LogicalResponse> responses = readConcurrently("database/creds/app", 1, 2);
+
+        assertThat(responses.get(0).getLeaseId(), is(not(responses.get(1).getLeaseId())));
+        assertThat(vault.getActiveLeases().size(), is(2));
+    }
+
+    private List<LogicalResponse> readConcurrently(String path, int engineVersion, int readers)
+        throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<LogicalResponse>> reads = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                VaultAccessor accessor = new VaultAccessor(
+                    new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN),
+                    null).init();
+                reads.add(executor.submit(() -> {
+                    start.await();
+                    return accessor.read(path, engineVersion);
+                }));
+            }
+            start.countDown();
+            List<LogicalResponse> responses = new ArrayList<>();
+            for (Future<LogicalResponse> read : reads) {
+                responses.add(read.get());
+            }
+            return responses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
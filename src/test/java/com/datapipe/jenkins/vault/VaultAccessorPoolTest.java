@@ -0,0 +1,65 @@
+package com.datapipe.jenkins.vault;
+
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+
+public class VaultAccessorPoolTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @After
+    public void clearPool() {
+        VaultAccessorPool.invalidateAll();
+    }
+
+    @Test
+    public void shouldReuseAccessorForSameConfiguration() {
+        List<?> key = Arrays.asList("folder", "http://vault", "cred", 2);
+
+        VaultAccessor first = VaultAccessorPool.get(key, this::newAccessor);
+        VaultAccessor second = VaultAccessorPool.get(Arrays.asList("folder", "http://vault", "cred", 2),
+            this::newAccessor);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(created.get(), is(1));
+    }
+
+    @Test
+    public void shouldCreateNewAccessorAfterInvalidation() {
+        List<?> key = Arrays.asList("folder", "http://vault", "cred", 2);
+
+        VaultAccessor first = VaultAccessorPool.get(key, this::newAccessor);
+        VaultAccessorPool.invalidate(key);
+        VaultAccessor second = VaultAccessorPool.get(key, this::newAccessor);
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(created.get(), is(2));
+    }
+
+    @Test
+    public void shouldNotPoolFailedInitialization() {
+        List<?> key = Arrays.asList("folder", "http://vault", "cred", 1);
+
+        assertThrows(VaultPluginException.class, () -> VaultAccessorPool.get(key, () -> {
+            throw new VaultPluginException("failed to connect to vault");
+        }));
+        VaultAccessorPool.get(key, this::newAccessor);
+
+        assertThat(created.get(), is(1));
+    }
+
+    private VaultAccessor newAccessor() {
+        created.incrementAndGet();
+        return new VaultAccessor();
+    }
+}
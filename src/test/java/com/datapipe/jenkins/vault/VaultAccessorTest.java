@@ -1,14 +1,38 @@
 package com.datapipe.jenkins.vault;
 
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
 import hudson.EnvVars;
+import hudson.model.Build;
+import hudson.model.Run;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class VaultAccessorTest {
@@ -48,4 +72,135 @@ public class VaultAccessorTest {
             "folder/folder1/folder2", "folder_folder1_folder2", "node_node1"
         )));
     }
+
+    @Test
+    public void retrieveVaultSecretsConcurrentlyKeepsDeclarationOrder() {
+        VaultAccessor mockAccessor = mock(VaultAccessor.class);
+        doReturn(mockAccessor).when(mockAccessor).init();
+        LogicalResponse first = okResponse(Collections.singletonMap("key", "first"));
+        LogicalResponse second = okResponse(Collections.singletonMap("key", "second"));
+        when(mockAccessor.read("path/one", 2)).thenReturn(first);
+        when(mockAccessor.read("path/two", 2)).thenReturn(second);
+
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl("testmock");
+        configuration.setVaultCredentialId("credId");
+        configuration.setMaxConcurrentReads(4);
+
+        EnvVars envVars = mock(EnvVars.class);
+        when(envVars.expand(anyString())).thenAnswer(i -> i.getArgument(0));
+        Run<?, ?> build = mock(Build.class);
+        PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true,
+            StandardCharsets.UTF_8);
+
+        List<VaultSecret> secrets = Arrays.asList(
+            secret("path/one", "ENV_ONE"),
+            secret("path/two", "ENV_TWO"),
+            secret("path/one", "ENV_SHARED"),
+            secret("path/two", "ENV_SHARED"));
+
+        Map<String, String> overrides = VaultAccessor.retrieveVaultSecrets(build, logger, envVars,
+            mockAccessor, configuration, secrets);
+
+        assertEquals("first", overrides.get("ENV_ONE"));
+        assertEquals("second", overrides.get("ENV_TWO"));
+        // last declaration wins, as with sequential reads
+        assertEquals("second", overrides.get("ENV_SHARED"));
+        verify(mockAccessor, times(1)).read("path/one", 2);
+        verify(mockAccessor, times(1)).read("path/two", 2);
+    }
+
+    @Test
+    public void retrieveVaultSecretsConcurrentlyRecordsTimeOfEachRead() {
+        VaultAccessor mockAccessor = mock(VaultAccessor.class);
+        doReturn(mockAccessor).when(mockAccessor).init();
+        LogicalResponse first = okResponse(Collections.singletonMap("key", "first"));
+        LogicalResponse second = okResponse(Collections.singletonMap("key", "second"));
+        when(mockAccessor.read("path/one", 2)).thenAnswer(i -> {
+            Thread.sleep(200);
+            return first;
+        });
+        when(mockAccessor.read("path/two", 2)).thenAnswer(i -> {
+            Thread.sleep(200);
+            return second;
+        });
+
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl("testmock");
+        configuration.setVaultCredentialId("credId");
+        configuration.setMaxConcurrentReads(4);
+
+        EnvVars envVars = mock(EnvVars.class);
+        when(envVars.expand(anyString())).thenAnswer(i -> i.getArgument(0));
+        Run<?, ?> build = mock(Build.class);
+        PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true,
+            StandardCharsets.UTF_8);
+        VaultTimingAction.Timing timing = new VaultTimingAction.Timing("test");
+
+        VaultAccessor.retrieveVaultSecrets(build, logger, envVars, mockAccessor, configuration,
+            Arrays.asList(secret("path/one", "ENV_ONE"), secret("path/two", "ENV_TWO")), null,
+            timing);
+
+        assertThat(timing.getReads(), hasSize(2));
+        for (VaultTimingAction.Read read : timing.getReads()) {
+            assertThat(read.getPath(), read.getMillis(), greaterThanOrEqualTo(150L));
+        }
+        // both reads ran at the same time
+        assertThat(timing.getReadMillis(), greaterThanOrEqualTo(150L));
+        assertThat(timing.getReadMillis(), lessThan(400L));
+    }
+
+    @Test
+    public void retrieveVaultSecretsConcurrentlyReadsAtMostMaxConcurrentReads() {
+        VaultAccessor mockAccessor = mock(VaultAccessor.class);
+        doReturn(mockAccessor).when(mockAccessor).init();
+        LogicalResponse response = okResponse(Collections.singletonMap("key", "value"));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(mockAccessor.read(anyString(), eq(2))).thenAnswer(i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(100);
+            running.decrementAndGet();
+            return response;
+        });
+
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl("testmock");
+        configuration.setVaultCredentialId("credId");
+        configuration.setMaxConcurrentReads(2);
+
+        EnvVars envVars = mock(EnvVars.class);
+        when(envVars.expand(anyString())).thenAnswer(i -> i.getArgument(0));
+        Run<?, ?> build = mock(Build.class);
+        PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true,
+            StandardCharsets.UTF_8);
+
+        Map<String, String> overrides = VaultAccessor.retrieveVaultSecrets(build, logger, envVars,
+            mockAccessor, configuration, Arrays.asList(
+                secret("path/one", "ENV_ONE"),
+                secret("path/two", "ENV_TWO"),
+                secret("path/three", "ENV_THREE"),
+                secret("path/four", "ENV_FOUR")));
+
+        assertThat(overrides.size(), is(4));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+        verify(mockAccessor, times(4)).read(anyString(), eq(2));
+    }
+
+    private static VaultSecret secret(String path, String envVar) {
+        VaultSecretValue value = new VaultSecretValue("key");
+        value.setEnvVar(envVar);
+        VaultSecret secret = new VaultSecret(path, Collections.singletonList(value));
+        secret.setEngineVersion(2);
+        return secret;
+    }
+
+    private static LogicalResponse okResponse(Map<String, String> data) {
+        LogicalResponse resp = mock(LogicalResponse.class);
+        RestResponse rest = mock(RestResponse.class);
+        when(resp.getData()).thenReturn(new HashMap<>(data));
+        when(resp.getRestResponse()).thenReturn(rest);
+        when(rest.getStatus()).thenReturn(200);
+        return resp;
+    }
 }
@@ -0,0 +1,99 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import io.github.jopenlibs.vault.VaultConfig;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+public class VaultDisposerTest {
+
+    private FakeVaultServer vault;
+    private VaultConfiguration configuration;
+    private VaultTokenCredential credential;
+
+    @Before
+    public void startVault() throws Exception {
+        VaultDisposer.ASYNC_REVOCATION = false;
+        vault = new FakeVaultServer()
+            .putDynamicSecret("database/creds/app", Collections.singletonMap("password", "db"),
+                600);
+        configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setTimeout(0);
+        configuration.fixDefaults();
+        credential = new VaultTokenCredential(CredentialsScope.GLOBAL, "token", "",
+            Secret.fromString(FakeVaultServer.ROOT_TOKEN));
+    }
+
+    @After
+    public void stopVault() {
+        VaultDisposer.ASYNC_REVOCATION = true;
+        vault.close();
+    }
+
+    @Test
+    public void shouldRevokeAllLeases() throws Exception {
+        List<String> leaseIds = createLeases(3);
+        leaseIds.add("");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        new VaultDisposer(configuration, credential, leaseIds)
+            .tearDown(null, null, null, new StreamTaskListener(log, StandardCharsets.UTF_8));
+
+        assertThat(vault.getActiveLeases().isEmpty(), is(true));
+        assertThat(log.toString(StandardCharsets.UTF_8), containsString("Revoked 3 of 3"));
+    }
+
+    @Test
+    public void shouldRevokeOtherLeasesWhenOneFails() throws Exception {
+        List<String> leaseIds = createLeases(3);
+        vault.failRevocation(leaseIds.get(1));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        VaultDisposer disposer = new VaultDisposer(configuration, credential, leaseIds);
+
+        assertThrows(VaultPluginException.class, () -> disposer.tearDown(null, null, null,
+            new StreamTaskListener(log, StandardCharsets.UTF_8)));
+
+        assertThat(vault.getRevokedLeases(), containsInAnyOrder(leaseIds.get(0), leaseIds.get(2)));
+        assertThat(log.toString(StandardCharsets.UTF_8), containsString("Revoked 2 of 3"));
+        assertThat(log.toString(StandardCharsets.UTF_8),
+            containsString("Failed to revoke Vault lease " + leaseIds.get(1)));
+    }
+
+    @Test
+    public void shouldNotLoginWithoutLeases() throws Exception {
+        new VaultDisposer(configuration, credential, Collections.singletonList(""))
+            .tearDown(null, null, null, StreamTaskListener.NULL);
+
+        assertThat(vault.getTotalRequestCount(), is(0));
+    }
+
+    private List<String> createLeases(int count) {
+        VaultAccessor accessor = new VaultAccessor(
+            new VaultConfig().address(vault.getUrl()).token(FakeVaultServer.ROOT_TOKEN), null)
+            .init();
+        List<String> leaseIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            leaseIds.add(accessor.read("database/creds/app", 1).getLeaseId());
+        }
+        return leaseIds;
+    }
+}
@@ -0,0 +1,97 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.hudson.plugins.folder.properties.FolderCredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultAppRoleCredential;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.util.Secret;
+import io.github.jopenlibs.vault.VaultConfig;
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * {@link VaultSecretCache} with credentials of the same ID in different folders.
+ */
+public class VaultSecretCacheFolderTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FakeVaultServer vault;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putSecret("secret/app", Collections.singletonMap("password", "s3cr3t"))
+            .addAppRole("approle-a", "role-a", "secret-a", "team-a")
+            .addAppRole("approle-b", "role-b", "secret-b", "team-b");
+        VaultSecretCache.get().invalidateAll();
+    }
+
+    @After
+    public void stopVault() {
+        VaultSecretCache.get().invalidateAll();
+        vault.close();
+    }
+
+    @Test
+    public void shouldNotShareCachedSecretsBetweenFoldersWithSameCredentialId()
+        throws Exception {
+        Job<?, ?> jobA = folderWithCredential("a", "role-a", "secret-a", "approle-a")
+            .createProject(FreeStyleProject.class, "job");
+        Job<?, ?> jobB = folderWithCredential("b", "role-b", "secret-b", "approle-b")
+            .createProject(FreeStyleProject.class, "job");
+
+        assertThat(read(jobA).getData(), hasEntry("password", "s3cr3t"));
+        assertThat(read(jobA).getData(), hasEntry("password", "s3cr3t"));
+        assertThat(vault.getRequestCount("secret/data/app"), is(1));
+
+        assertThat(read(jobB).getData(), hasEntry("password", "s3cr3t"));
+        assertThat(vault.getRequestCount("auth/approle-b/login"), is(1));
+        assertThat(vault.getRequestCount("secret/data/app"), is(2));
+    }
+
+    private LogicalResponse read(Job<?, ?> job) {
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setVaultCredentialId("vault");
+        VaultCredential credential = VaultAccessor.retrieveVaultCredentials(job, configuration);
+        VaultAccessor accessor = new VaultAccessor(new VaultConfig().address(vault.getUrl()),
+            credential);
+        accessor.setCacheTtl(60);
+        accessor.setCacheMaxSize(100);
+        return accessor.init().read("secret/app", 2);
+    }
+
+    private Folder folderWithCredential(String name, String roleId, String secretId,
+        String mount) throws Exception {
+        Folder folder = j.jenkins.createProject(Folder.class, name);
+        for (CredentialsStore store : CredentialsProvider.lookupStores(folder)) {
+            if (store.getProvider() instanceof FolderCredentialsProvider
+                && store.getContext() == folder) {
+                store.addCredentials(Domain.global(), new VaultAppRoleCredential(
+                    CredentialsScope.GLOBAL, "vault", "", roleId, Secret.fromString(secretId),
+                    mount));
+                return folder;
+            }
+        }
+        throw new AssertionError("no folder credentials store");
+    }
+}
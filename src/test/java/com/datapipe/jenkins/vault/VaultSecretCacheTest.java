@@ -0,0 +1,142 @@
+package com.datapipe.jenkins.vault;
+
+import io.github.jopenlibs.vault.response.LogicalResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class VaultSecretCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private VaultSecretCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new VaultSecretCache(now::get);
+    }
+
+    @Test
+    public void shouldServeCachedResponseUntilTtlExpires() {
+        LogicalResponse response = response(200, null, 0L);
+        cache.put(key("secret/a"), response, 10, 100);
+
+        assertThat(cache.get(key("secret/a")), is(sameInstance(response)));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(cache.get(key("secret/a")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldExpireOnShorterLeaseDuration() {
+        cache.put(key("secret/a"), response(200, null, 5L), 60, 100);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertThat(cache.get(key("secret/a")) != null, is(true));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cache.get(key("secret/a")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        cache.put(key("secret/a"), response(200, null, 0L), 60, 2);
+        cache.put(key("secret/b"), response(200, null, 0L), 60, 2);
+        // touch a so b becomes the eldest entry
+        cache.get(key("secret/a"));
+        cache.put(key("secret/c"), response(200, null, 0L), 60, 2);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(key("secret/b")), is(nullValue()));
+        assertThat(cache.get(key("secret/a")) != null, is(true));
+        assertThat(cache.get(key("secret/c")) != null, is(true));
+    }
+
+    @Test
+    public void shouldNotCacheErrorsOrLeasedSecrets() {
+        cache.put(key("secret/missing"), response(404, null, 0L), 60, 100);
+        cache.put(key("database/creds/role"), response(200, "database/creds/role/abc", 60L), 60,
+            100);
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldSeparateKeysByToken() {
+        cache.put(key("secret/a"), response(200, null, 0L), 60, 100);
+
+        VaultSecretCache.Key otherToken = new VaultSecretCache.Key("http://vault", null,
+            VaultSecretCache.identityOf("other-token"), 2, 1, "secret/a");
+        assertThat(cache.get(otherToken), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDropGroupsOfUnusedTokens() {
+        cache.put(key("secret/a"), response(200, null, 0L), 10, 100);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        cache.put(new VaultSecretCache.Key("http://vault", null,
+            VaultSecretCache.identityOf("next-token"), 2, 1, "secret/a"),
+            response(200, null, 0L), 10, 100);
+
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void shouldNotLoseEntriesToConcurrentPurges() throws Exception {
+        LogicalResponse response = response(200, null, 0L);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    int lost = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        // every put creates a new group and purges the others
+                        VaultSecretCache.Key key = new VaultSecretCache.Key("http://vault", null,
+                            VaultSecretCache.identityOf("token-" + thread + "-" + i), 2, 1,
+                            "secret/a");
+                        cache.put(key, response, 10, 100);
+                        if (cache.get(key) == null) {
+                            lost++;
+                        }
+                    }
+                    return lost;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertThat(future.get(), is(0));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static VaultSecretCache.Key key(String path) {
+        return new VaultSecretCache.Key("http://vault", null,
+            VaultSecretCache.identityOf("token"), 2, 1, path);
+    }
+
+    private static LogicalResponse response(int status, String leaseId, Long leaseDuration) {
+        LogicalResponse resp = mock(LogicalResponse.class);
+        RestResponse rest = mock(RestResponse.class);
+        when(resp.getRestResponse()).thenReturn(rest);
+        when(resp.getLeaseId()).thenReturn(leaseId);
+        when(resp.getLeaseDuration()).thenReturn(leaseDuration);
+        when(rest.getStatus()).thenReturn(status);
+        return resp;
+    }
+}
@@ -0,0 +1,109 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.util.Secret;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class VaultSecretPrefetcherTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FakeVaultServer vault;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putSecret("kv/app", Collections.singletonMap("password", "s3cr3t-value"))
+            .putDynamicSecret("database/creds/app", Collections.singletonMap("password", "db"),
+                600);
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldReadSecretsWhileQueued() throws Exception {
+        FreeStyleProject project = createProject("kv/app");
+
+        QueueTaskFuture<FreeStyleBuild> build = project.scheduleBuild2(3);
+        await(() -> vault.getRequestCount("kv/app") == 1);
+        FreeStyleBuild run = j.assertBuildStatusSuccess(build);
+
+        j.assertLogContains("Retrieving secret: kv/app", run);
+        assertThat(vault.getRequestCount("kv/app"), is(1));
+    }
+
+    @Test
+    public void shouldRevokeLeasesOfCancelledItems() throws Exception {
+        FreeStyleProject project = createProject("database/creds/app");
+
+        project.scheduleBuild2(60);
+        await(() -> vault.getActiveLeases().size() == 1);
+        j.jenkins.getQueue().cancel(project);
+
+        await(() -> vault.getActiveLeases().isEmpty());
+        assertThat(vault.getRevokedLeases().size(), is(1));
+    }
+
+    @Test
+    public void shouldReadAgainWhenLeaseExpiredWhileQueued() throws Exception {
+        vault.putDynamicSecret("database/creds/short", Collections.singletonMap("password", "db"),
+            3);
+        FreeStyleProject project = createProject("database/creds/short");
+
+        QueueTaskFuture<FreeStyleBuild> build = project.scheduleBuild2(4);
+        await(() -> vault.getActiveLeases().size() == 1);
+        String prefetched = vault.getActiveLeases().iterator().next();
+        j.assertBuildStatusSuccess(build);
+
+        assertThat(vault.getRequestCount("database/creds/short"), is(2));
+        await(() -> vault.getRevokedLeases().contains(prefetched));
+    }
+
+    private FreeStyleProject createProject(String path) throws Exception {
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setVaultCredential(new VaultTokenCredential(CredentialsScope.GLOBAL,
+            "token", "", Secret.fromString(FakeVaultServer.ROOT_TOKEN)));
+        configuration.setEngineVersion(1);
+        VaultSecret secret = new VaultSecret(path,
+            Collections.singletonList(new VaultSecretValue("PASSWORD", "password")));
+        VaultBuildWrapper wrapper = new VaultBuildWrapper(Collections.singletonList(secret));
+        wrapper.setConfiguration(configuration);
+        wrapper.setPrefetchSecrets(true);
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.getBuildWrappersList().add(wrapper);
+        return project;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("condition not met in time");
+    }
+}
@@ -0,0 +1,73 @@
+package com.datapipe.jenkins.vault;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import java.util.Collections;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class VaultTimingActionTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FakeVaultServer vault;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putSecret("kv/app", Collections.singletonMap("password", "s3cr3t-value"));
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldRecordTimingOfBuildWrapper() throws Exception {
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setVaultCredential(new VaultTokenCredential(CredentialsScope.GLOBAL,
+            "token", "", Secret.fromString(FakeVaultServer.ROOT_TOKEN)));
+        configuration.setEngineVersion(1);
+        VaultBuildWrapper wrapper = new VaultBuildWrapper(Collections.singletonList(
+            new VaultSecret("kv/app",
+                Collections.singletonList(new VaultSecretValue("PASSWORD", "password")))));
+        wrapper.setConfiguration(configuration);
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.getBuildWrappersList().add(wrapper);
+
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+
+        VaultTimingAction action = build.getAction(VaultTimingAction.class);
+        assertThat(action, notNullValue());
+        assertThat(action.getTimings(), hasSize(1));
+        VaultTimingAction.Timing timing = action.getTimings().get(0);
+        assertThat(timing.getSource(), is("VaultBuildWrapper"));
+        assertThat(timing.getReads(), hasSize(1));
+        assertThat(timing.getReads().get(0).getPath(), is("kv/app"));
+
+        JSONObject json = j.createWebClient()
+            .getJSON(build.getUrl() + "vault-timings/api/json?depth=1").getJSONObject();
+        assertThat(json.getJSONArray("timings").getJSONObject(0).getString("source"),
+            is("VaultBuildWrapper"));
+        j.createWebClient().goTo(build.getUrl() + "vault-timings/");
+    }
+}
@@ -0,0 +1,38 @@
+package com.datapipe.jenkins.vault;
+
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class VaultTransportTest {
+
+    @Test
+    public void shouldShareSslConfigBetweenConfigurations() {
+        VaultConfiguration first = new VaultConfiguration("http://vault-a:8200", "cred", false);
+        VaultConfiguration second = new VaultConfiguration("http://vault-b:8200", "cred", false);
+        first.fixDefaults();
+        second.fixDefaults();
+
+        assertThat(first.getVaultConfig().getSslConfig(),
+            is(sameInstance(second.getVaultConfig().getSslConfig())));
+    }
+
+    @Test
+    public void shouldKeepSkipSslVerificationSeparate() {
+        assertThat(VaultTransport.getSslConfig(true),
+            is(not(sameInstance(VaultTransport.getSslConfig(false)))));
+        assertThat(VaultTransport.getSslConfig(null),
+            is(sameInstance(VaultTransport.getSslConfig(false))));
+    }
+
+    @Test
+    public void shouldInsertDataSegmentAfterMount() {
+        assertThat(VaultTransport.addDataSegment("secret/app", 1), is("secret/data/app"));
+        assertThat(VaultTransport.addDataSegment("team/kv/app/db", 2), is("team/kv/data/app/db"));
+        assertThat(VaultTransport.addDataSegment("secret/app/", 1), is("secret/data/app/"));
+    }
+}
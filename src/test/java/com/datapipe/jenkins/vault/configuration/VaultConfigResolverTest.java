@@ -0,0 +1,133 @@
+package com.datapipe.jenkins.vault.configuration;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.datapipe.jenkins.vault.VaultAccessor;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class VaultConfigResolverTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void shouldMergeFolderChainWithGlobalConfiguration() throws Exception {
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://global", "ns"));
+        Folder parent = j.jenkins.createProject(Folder.class, "parent");
+        parent.addProperty(new FolderVaultConfiguration(configuration("http://parent", null)));
+        Folder child = parent.createProject(Folder.class, "child");
+
+        VaultConfiguration resolved = VaultConfigResolver.resolve(child);
+
+        assertThat(resolved.getVaultUrl(), is("http://parent"));
+        assertThat(resolved.getVaultNamespace(), is("ns"));
+        assertThat(resolved.getEngineVersion(), is(2));
+        assertThat(VaultConfigResolver.resolve(child), not(sameInstance(resolved)));
+    }
+
+    @Test
+    public void shouldMergeBuildConfigurationFirst() throws Exception {
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://global", "ns"));
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+
+        VaultConfiguration merged = VaultConfigResolver.mergeWithResolved(
+            configuration("http://build", null), folder);
+
+        assertThat(merged.getVaultUrl(), is("http://build"));
+        assertThat(merged.getVaultNamespace(), is("ns"));
+    }
+
+    @Test
+    public void shouldInvalidateWhenConfigurationIsSaved() throws Exception {
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://global", null));
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        assertThat(VaultConfigResolver.resolve(folder).getVaultUrl(), is("http://global"));
+
+        folder.addProperty(new FolderVaultConfiguration(configuration("http://folder", null)));
+        assertThat(VaultConfigResolver.resolve(folder).getVaultUrl(), is("http://folder"));
+
+        folder.getProperties().remove(FolderVaultConfiguration.class);
+        folder.save();
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://changed", null));
+        assertThat(VaultConfigResolver.resolve(folder).getVaultUrl(), is("http://changed"));
+    }
+
+    @Test
+    public void shouldAskOtherResolversForJob() throws Exception {
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://global", null));
+        FreeStyleProject job = j.createFreeStyleProject();
+
+        VaultConfiguration merged = VaultAccessor.pullAndMergeConfiguration(job, null);
+
+        assertThat(merged.getVaultUrl(), is("http://global"));
+        assertThat(merged.getVaultNamespace(), is("from-job"));
+    }
+
+    @Test
+    public void shouldAskOtherResolversForItemGroupEveryTime() throws Exception {
+        GlobalVaultConfiguration.get().setConfiguration(configuration("http://global", null));
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        ChangingResolver resolver = j.jenkins.getExtensionList(VaultConfigResolver.class)
+            .get(ChangingResolver.class);
+
+        resolver.namespace = "first";
+        assertThat(VaultConfigResolver.resolve(folder).getVaultNamespace(), is("first"));
+
+        resolver.namespace = "second";
+        assertThat(VaultConfigResolver.resolve(folder).getVaultNamespace(), is("second"));
+        VaultConfiguration merged = VaultConfigResolver.mergeWithResolved(
+            configuration("http://build", null), folder);
+        assertThat(merged.getVaultUrl(), is("http://build"));
+        assertThat(merged.getVaultNamespace(), is("second"));
+    }
+
+    @TestExtension("shouldAskOtherResolversForItemGroupEveryTime")
+    public static class ChangingResolver extends VaultConfigResolver {
+
+        private volatile String namespace;
+
+        @NonNull
+        @Override
+        public VaultConfiguration forJob(@NonNull Item job) {
+            return configuration(null, namespace);
+        }
+
+        @Override
+        public VaultConfiguration getVaultConfig(@NonNull ItemGroup<Item> itemGroup) {
+            return configuration(null, namespace);
+        }
+    }
+
+    @TestExtension("shouldAskOtherResolversForJob")
+    public static class JobResolver extends VaultConfigResolver {
+
+        @NonNull
+        @Override
+        public VaultConfiguration forJob(@NonNull Item job) {
+            return configuration(null, "from-job");
+        }
+
+        @Override
+        public VaultConfiguration getVaultConfig(@NonNull ItemGroup<Item> itemGroup) {
+            return configuration(null, "from-group");
+        }
+    }
+
+    private static VaultConfiguration configuration(String url, String namespace) {
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl(url);
+        configuration.setVaultNamespace(namespace);
+        return configuration;
+    }
+}
@@ -12,13 +12,20 @@ import io.github.jopenlibs.vault.response.LookupResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -91,8 +98,7 @@ public class AbstractVaultTokenCredentialWithExpirationTest {
             tr.getPolices() == policies && tr.getTtl().equals("30s")
         ))).thenReturn(childAuthResponse);
         when(auth.lookupSelf()).thenReturn(lookupResponse);
-        // First response is for parent, second is for child
-        when(lookupResponse.getTTL()).thenReturn(30L, 0L);
+        when(lookupResponse.getTTL()).thenReturn(30L);
 
         vaultTokenCredentialWithExpiration.authorizeWithVault(vaultConfig, policies);
 
@@ -105,6 +111,7 @@ public class AbstractVaultTokenCredentialWithExpirationTest {
     public void shouldReuseTheExistingTokenIfNotExpired() throws VaultException {
         when(authResponse.getAuthClientToken()).thenReturn("fakeToken1", "fakeToken2");
         when(childAuthResponse.getAuthClientToken()).thenReturn("childToken1", "childToken2");
+        when(childAuthResponse.getAuthLeaseDuration()).thenReturn(30L);
         when(auth.lookupSelf()).thenReturn(lookupResponse);
         when(lookupResponse.getTTL()).thenReturn(30L);
 
@@ -151,6 +158,146 @@ public class AbstractVaultTokenCredentialWithExpirationTest {
         verify(vaultConfig).token("fakeToken2");
     }
 
+    @Test
+    public void shouldUseTokenTTLFromLoginResponse() throws VaultException {
+        when(authResponse.getAuthLeaseDuration()).thenReturn(30L);
+        when(childAuthResponse.getAuthLeaseDuration()).thenReturn(30L);
+        ExampleVaultTokenCredentialWithExpiration credential =
+            new ExampleVaultTokenCredentialWithExpiration(vault) {
+                @Override
+                protected AuthResponse login(Vault vault) {
+                    try {
+                        return vault.auth().loginByCert();
+                    } catch (VaultException e) {
+                        throw new VaultPluginException(e.getMessage(), e);
+                    }
+                }
+            };
+
+        credential.authorizeWithVault(vaultConfig, null);
+        credential.authorizeWithVault(vaultConfig, null);
+        credential.authorizeWithVault(vaultConfig, policies);
+        credential.authorizeWithVault(vaultConfig, policies);
+
+        verify(auth, never()).lookupSelf();
+        verify(auth, times(2)).loginByCert();
+        verify(auth).createToken(argThat((TokenRequest tr) -> tr.getTtl().equals("30s")));
+        verify(vaultConfig, times(2)).token("childToken");
+    }
+
+    @Test
+    public void shouldLoginOnceForConcurrentAuthorizations() throws Exception {
+        when(auth.lookupSelf()).thenReturn(lookupResponse);
+        when(lookupResponse.getTTL()).thenReturn(60L);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(
+                    () -> vaultTokenCredentialWithExpiration.authorizeWithVault(vaultConfig, null)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(auth, times(1)).loginByCert();
+        verify(vaultConfig, times(32)).token("fakeToken");
+        assertThat(vaultTokenCredentialWithExpiration.getTokenCacheMisses(), is(1L));
+        assertThat(vaultTokenCredentialWithExpiration.getTokenCacheHits(), is(31L));
+    }
+
+    @Test
+    public void shouldRenewUsedTokenInsteadOfLoggingInAgain() throws VaultException {
+        when(auth.lookupSelf()).thenReturn(lookupResponse);
+        when(lookupResponse.getTTL()).thenReturn(60L);
+        when(lookupResponse.isRenewable()).thenReturn(true);
+        AuthResponse renewResponse = mock(AuthResponse.class);
+        when(renewResponse.getAuthLeaseDuration()).thenReturn(60L);
+        when(renewResponse.isAuthRenewable()).thenReturn(true);
+        when(auth.renewSelf()).thenReturn(renewResponse);
+        VaultConfig config = new VaultConfig().address("http://localhost:8200");
+
+        vaultTokenCredentialWithExpiration.authorizeWithVault(config, null);
+        vaultTokenCredentialWithExpiration.renewToken(null);
+        // not used since the renewal, so it is left to expire
+        vaultTokenCredentialWithExpiration.renewToken(null);
+        vaultTokenCredentialWithExpiration.authorizeWithVault(config, null);
+
+        verify(auth, times(1)).loginByCert();
+        verify(auth, times(1)).renewSelf();
+        assertThat(config.getToken(), is("fakeToken"));
+    }
+
+    @Test
+    public void shouldLoginAgainIfTokenIsNotRenewable() throws VaultException {
+        when(authResponse.getAuthClientToken()).thenReturn("fakeToken1", "fakeToken2");
+        when(auth.lookupSelf()).thenReturn(lookupResponse);
+        when(lookupResponse.getTTL()).thenReturn(60L);
+        when(lookupResponse.isRenewable()).thenReturn(false);
+        VaultConfig config = new VaultConfig().address("http://localhost:8200");
+
+        vaultTokenCredentialWithExpiration.authorizeWithVault(config, null);
+        vaultTokenCredentialWithExpiration.renewToken(null);
+        vaultTokenCredentialWithExpiration.authorizeWithVault(config, null);
+
+        verify(auth, times(2)).loginByCert();
+        verify(auth, times(0)).renewSelf();
+        assertThat(config.getToken(), is("fakeToken2"));
+        assertThat(vaultTokenCredentialWithExpiration.getTokenCacheMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldRevokeReplacedTokenAfterLoggingInAgain() throws VaultException {
+        when(authResponse.getAuthClientToken()).thenReturn("fakeToken1", "fakeToken2");
+        when(authResponse.getAuthLeaseDuration()).thenReturn(60L);
+        when(authResponse.isAuthRenewable()).thenReturn(false);
+        ExampleVaultTokenCredentialWithExpiration credential =
+            new ExampleVaultTokenCredentialWithExpiration(vault) {
+                @Override
+                protected AuthResponse login(Vault vault) {
+                    try {
+                        return vault.auth().loginByCert();
+                    } catch (VaultException e) {
+                        throw new VaultPluginException(e.getMessage(), e);
+                    }
+                }
+            };
+        VaultConfig config = new VaultConfig().address("http://localhost:8200");
+
+        credential.authorizeWithVault(config, null);
+        credential.renewToken(null);
+
+        verify(auth, times(2)).loginByCert();
+        verify(auth, timeout(5000)).revokeSelf();
+        credential.authorizeWithVault(config, null);
+        assertThat(config.getToken(), is("fakeToken2"));
+    }
+
+    @Test
+    public void shouldUseOverriddenChildTokenWhenLoggingIn() throws VaultException {
+        when(auth.lookupSelf()).thenReturn(lookupResponse);
+        when(lookupResponse.getTTL()).thenReturn(30L);
+        AuthResponse overridden = mock(AuthResponse.class);
+        when(overridden.getAuthClientToken()).thenReturn("overriddenToken");
+        ExampleVaultTokenCredentialWithExpiration credential =
+            new ExampleVaultTokenCredentialWithExpiration(vault) {
+                @Override
+                protected AuthResponse getChildToken(Vault vault, List<String> policies,
+                    Long parentTTL) {
+                    return overridden;
+                }
+            };
+
+        credential.authorizeWithVault(vaultConfig, policies);
+
+        verify(vaultConfig).token("overriddenToken");
+        verify(auth, never()).createToken(any(TokenRequest.class));
+    }
+
     static class ExampleVaultTokenCredentialWithExpiration extends
         AbstractVaultTokenCredentialWithExpiration {
 
@@ -0,0 +1,99 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.hudson.plugins.folder.properties.FolderCredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.credentials.common.VaultStringCredential;
+import com.datapipe.jenkins.vault.credentials.common.VaultStringCredentialImpl;
+import hudson.model.ItemGroup;
+import hudson.security.ACL;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class VaultCredentialsProviderTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void shouldBindCopiesWithoutMutatingStoredCredentials() throws Exception {
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        Folder child = folder.createProject(Folder.class, "child");
+        VaultStringCredentialImpl stored = credential("folder-secret", CredentialsScope.GLOBAL);
+        folderStore(folder).addCredentials(Domain.global(), stored);
+
+        List<VaultStringCredential> found = lookup(child);
+
+        assertThat(found, hasSize(1));
+        assertThat(found.get(0), not(sameInstance(stored)));
+        assertThat(((VaultStringCredentialImpl) found.get(0)).getContext(), is(folder));
+        assertThat(stored.getContext(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReindexWhenStoresChange() throws Exception {
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        assertThat(lookup(folder), hasSize(0));
+
+        SystemCredentialsProvider.getInstance().getCredentials()
+            .add(credential("global-secret", CredentialsScope.GLOBAL));
+        SystemCredentialsProvider.getInstance().getCredentials()
+            .add(credential("system-secret", CredentialsScope.SYSTEM));
+        SystemCredentialsProvider.getInstance().save();
+
+        List<VaultStringCredential> found = lookup(folder);
+        assertThat(found, hasSize(1));
+        assertThat(found.get(0).getId(), is("global-secret"));
+        assertThat(lookup(j.jenkins), hasSize(2));
+    }
+
+    @Test
+    public void shouldBindNewCopiesOnEachLookup() throws Exception {
+        Folder folder = j.jenkins.createProject(Folder.class, "folder");
+        Folder child = folder.createProject(Folder.class, "child");
+        assertThat(lookup(child), hasSize(0));
+
+        folderStore(folder).addCredentials(Domain.global(),
+            credential("folder-secret", CredentialsScope.GLOBAL));
+
+        VaultStringCredential first = lookup(child).get(0);
+        VaultStringCredential second = lookup(child).get(0);
+        assertThat(second, not(sameInstance(first)));
+        assertThat(((VaultStringCredentialImpl) second).getContext(), is(folder));
+    }
+
+    private static List<VaultStringCredential> lookup(ItemGroup<?> itemGroup) {
+        return new VaultCredentialsProvider().getCredentialsInItemGroup(
+            VaultStringCredential.class, itemGroup, ACL.SYSTEM2, Collections.emptyList());
+    }
+
+    private static CredentialsStore folderStore(Folder folder) {
+        for (CredentialsStore store : CredentialsProvider.lookupStores(folder)) {
+            if (store.getProvider() instanceof FolderCredentialsProvider
+                && store.getContext() == folder) {
+                return store;
+            }
+        }
+        throw new AssertionError("no folder credentials store");
+    }
+
+    private static VaultStringCredentialImpl credential(String id, CredentialsScope scope) {
+        VaultStringCredentialImpl credential = new VaultStringCredentialImpl(scope, id, id);
+        credential.setPath("secret/" + id);
+        return credential;
+    }
+}
@@ -5,6 +5,8 @@ import hudson.XmlFile;
 import hudson.model.ItemGroup;
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.HashMap;
+import java.util.Map;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPath;
@@ -16,6 +18,7 @@ import org.jvnet.hudson.test.Issue;
 import org.w3c.dom.Document;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.mockito.Mockito.mock;
 
 public class AbstractVaultBaseStandardCredentialsTest {
@@ -49,4 +52,89 @@ public class AbstractVaultBaseStandardCredentialsTest {
             assertEquals("false", xpath.compile(expression).evaluate(doc));
         }
     }
+
+    @Test
+    public void multiKeyCredentialReadsSecretOncePerLookup() {
+        CountingSSHUserPrivateKey stored = new CountingSSHUserPrivateKey();
+        ItemGroup context = mock(ItemGroup.class);
+
+        CountingSSHUserPrivateKey cred = (CountingSSHUserPrivateKey) stored.withContext(context);
+        assertEquals("user", cred.getUsername());
+        assertEquals("key", cred.getPrivateKey());
+        assertEquals("phrase", cred.getPassphraseKeyValue());
+        assertEquals(1, cred.reads);
+
+        CountingSSHUserPrivateKey next = (CountingSSHUserPrivateKey) stored.withContext(context);
+        assertEquals("user", next.getUsername());
+        assertEquals(1, next.reads);
+    }
+
+    @Test
+    public void lookupCopyReadsSecretAgainWhenSnapshotExpired() throws Exception {
+        long ttl = AbstractVaultBaseStandardCredentials.SNAPSHOT_TTL_MILLIS;
+        AbstractVaultBaseStandardCredentials.SNAPSHOT_TTL_MILLIS = 100;
+        try {
+            CountingSSHUserPrivateKey stored = new CountingSSHUserPrivateKey();
+            CountingSSHUserPrivateKey cred =
+                (CountingSSHUserPrivateKey) stored.withContext(mock(ItemGroup.class));
+            cred.getUsername();
+            cred.getPrivateKey();
+            assertEquals(1, cred.reads);
+
+            Thread.sleep(150);
+            cred.getUsername();
+            assertEquals(2, cred.reads);
+        } finally {
+            AbstractVaultBaseStandardCredentials.SNAPSHOT_TTL_MILLIS = ttl;
+        }
+    }
+
+    @Test
+    public void storedCredentialReadsSecretEveryTime() {
+        CountingSSHUserPrivateKey cred = new CountingSSHUserPrivateKey();
+        cred.setContext(mock(ItemGroup.class));
+
+        cred.getUsername();
+        cred.getPrivateKey();
+
+        assertEquals(2, cred.reads);
+    }
+
+    @Test
+    public void snapshotIsNotSharedAcrossContexts() {
+        CountingSSHUserPrivateKey cred = new CountingSSHUserPrivateKey();
+        ItemGroup first = mock(ItemGroup.class);
+        ItemGroup second = mock(ItemGroup.class);
+        assertNotSame(first, second);
+
+        cred.setContext(first);
+        cred.getUsername();
+        cred.setContext(second);
+        cred.getUsername();
+
+        assertEquals(2, cred.reads);
+    }
+
+    private static class CountingSSHUserPrivateKey extends VaultSSHUserPrivateKeyImpl {
+
+        private int reads;
+
+        CountingSSHUserPrivateKey() {
+            super(CredentialsScope.GLOBAL, "ssh", "ssh credential");
+        }
+
+        String getPassphraseKeyValue() {
+            return getVaultSecretKeyValue(DEFAULT_PASSPHRASE_KEY);
+        }
+
+        @Override
+        protected Map<String, String> getVaultSecretValue() {
+            reads++;
+            Map<String, String> values = new HashMap<>();
+            values.put(DEFAULT_USERNAME_KEY, "user");
+            values.put(DEFAULT_PRIVATE_KEY_KEY, "key");
+            values.put(DEFAULT_PASSPHRASE_KEY, "phrase");
+            return values;
+        }
+    }
 }
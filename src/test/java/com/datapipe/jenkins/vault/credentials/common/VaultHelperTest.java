@@ -0,0 +1,67 @@
+package com.datapipe.jenkins.vault.credentials.common;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.datapipe.jenkins.vault.VaultAccessorPool;
+import com.datapipe.jenkins.vault.configuration.GlobalVaultConfiguration;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultAppRoleCredential;
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.util.Secret;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+public class VaultHelperTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FakeVaultServer vault;
+
+    @Before
+    public void startVault() throws Exception {
+        vault = new FakeVaultServer()
+            .putSecret("secret/app", Collections.singletonMap("password", "s3cr3t"))
+            .addAppRole("approle", "role", "secret-id");
+        SystemCredentialsProvider.getInstance().getCredentials().add(new VaultAppRoleCredential(
+            CredentialsScope.GLOBAL, "vault", "", "role", Secret.fromString("secret-id"),
+            "approle"));
+        SystemCredentialsProvider.getInstance().save();
+        VaultConfiguration configuration = new VaultConfiguration();
+        configuration.setVaultUrl(vault.getUrl());
+        configuration.setVaultCredentialId("vault");
+        GlobalVaultConfiguration.get().setConfiguration(configuration);
+    }
+
+    @After
+    public void stopVault() {
+        VaultAccessorPool.invalidateAll();
+        vault.close();
+    }
+
+    @Test
+    public void shouldLoginAgainWhenPooledTokenHasExpired() throws Exception {
+        vault.setTokenTtl(1, false);
+        @SuppressWarnings("unchecked")
+        ItemGroup<Item> context = (ItemGroup) j.jenkins;
+
+        assertThat(VaultHelper.getVaultSecret("secret/app", null, null, 2, context),
+            hasEntry("password", "s3cr3t"));
+        assertThat(vault.getRequestCount("auth/approle/login"), is(1));
+
+        Thread.sleep(1500);
+        assertThat(VaultHelper.getVaultSecret("secret/app", null, null, 2, context),
+            hasEntry("password", "s3cr3t"));
+        assertThat(vault.getRequestCount("auth/approle/login"), is(2));
+    }
+}
@@ -0,0 +1,137 @@
+package com.datapipe.jenkins.vault.jcasc.secrets;
+
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import io.jenkins.plugins.casc.misc.EnvVarsRule;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * {@link VaultSecretSource} against the in-process {@link FakeVaultServer}, without Docker.
+ */
+public class VaultSecretSourceFakeVaultTest {
+
+    private final FakeVaultServer vault;
+
+    @Rule
+    public EnvVarsRule env;
+
+    public VaultSecretSourceFakeVaultTest() throws IOException {
+        vault = new FakeVaultServer()
+            .putSecret("secret/app", Collections.singletonMap("password", "first"))
+            .putSecret("secret/other", Collections.singletonMap("user", "admin"))
+            .putSecret("secret/shared", Collections.singletonMap("user", "shared"));
+        env = new EnvVarsRule()
+            .set("CASC_VAULT_URL", vault.getUrl())
+            .set("CASC_VAULT_TOKEN", FakeVaultServer.ROOT_TOKEN)
+            .set("CASC_VAULT_PATHS", "secret/app,secret/other,missing/app,secret/shared")
+            .set("CASC_VAULT_REFRESH_INTERVAL", "3600");
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldRefreshOnlyChangedPaths() {
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+        int appReads = vault.getRequestCount("secret/data/app");
+        int otherReads = vault.getRequestCount("secret/data/other");
+
+        source.refresh();
+        assertThat(vault.getRequestCount("secret/data/app"), is(appReads));
+
+        vault.putSecret("secret/app", Collections.singletonMap("password", "second"));
+        source.refresh();
+        assertThat(source.reveal("password"), is(Optional.of("second")));
+        assertThat(source.reveal("secret/app/password"), is(Optional.of("second")));
+        assertThat(source.reveal("secret/other/user"), is(Optional.of("admin")));
+        assertThat(vault.getRequestCount("secret/data/app"), is(appReads + 1));
+        assertThat(vault.getRequestCount("secret/data/other"), is(otherReads));
+    }
+
+    @Test
+    public void shouldNotWaitForVaultOnReload() {
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+        int requests = vault.getTotalRequestCount();
+
+        source.init();
+
+        assertThat(vault.getTotalRequestCount(), is(requests));
+        assertThat(source.reveal("user"), is(Optional.of("shared")));
+    }
+
+    @Test
+    public void shouldMergeConcurrentReadsInDeclaredOrder() {
+        vault.setLatency(300);
+        VaultSecretSource source = new VaultSecretSource();
+
+        long start = System.nanoTime();
+        source.init();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 8 requests of 300ms when reading one path after the other
+        assertThat(millis, is(lessThan(2000L)));
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+        assertThat(source.reveal("user"), is(Optional.of("shared")));
+        assertThat(source.reveal("secret/other/user"), is(Optional.of("admin")));
+        assertThat(source.reveal("secret/shared/user"), is(Optional.of("shared")));
+    }
+
+    @Test
+    public void shouldPublishImmutableSecrets() {
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+
+        Map<String, String> secrets = source.getSecrets();
+        assertThat(secrets, hasEntry("user", "shared"));
+        assertThat(secrets, hasEntry("secret/other/user", "admin"));
+        assertThrows(UnsupportedOperationException.class, () -> secrets.put("user", "other"));
+
+        source.setSecrets(Collections.singletonMap("token", "abc"));
+        assertThat(source.reveal("token"), is(Optional.of("abc")));
+        assertThat(source.reveal("user"), is(Optional.empty()));
+    }
+
+    @Test
+    public void shouldResolveFullPathsBeforeShortKeys() {
+        Map<String, Map<String, String>> byPath = new LinkedHashMap<>();
+        byPath.put("secret/app", Map.of("db/password", "one", "password", "three"));
+        byPath.put("secret/app/db", Map.of("password", "two"));
+        VaultSecretSource.SecretMap secrets = new VaultSecretSource.SecretMap(byPath);
+
+        assertThat(secrets.get("secret/app/db/password"), is("two"));
+        assertThat(secrets.get("secret/app/password"), is("three"));
+        assertThat(secrets.get("db/password"), is("one"));
+        assertThat(secrets.get("password"), is("two"));
+        assertThat(secrets.get("secret/missing/password"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepSecretsWhenRefreshFails() {
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+        vault.setErrorRate(1.0);
+
+        source.refresh();
+
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+    }
+}
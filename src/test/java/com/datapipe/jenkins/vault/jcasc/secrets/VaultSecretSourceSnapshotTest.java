@@ -0,0 +1,116 @@
+package com.datapipe.jenkins.vault.jcasc.secrets;
+
+import com.datapipe.jenkins.vault.util.FakeVaultServer;
+import io.jenkins.plugins.casc.misc.EnvVarsRule;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class VaultSecretSourceSnapshotTest {
+
+    private final FakeVaultServer vault;
+
+    private final EnvVarsRule env;
+
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public RuleChain chain;
+
+    public VaultSecretSourceSnapshotTest() throws IOException {
+        vault = new FakeVaultServer()
+            .putSecret("secret/app", Collections.singletonMap("password", "first"));
+        env = new EnvVarsRule()
+            .set("CASC_VAULT_URL", vault.getUrl())
+            .set("CASC_VAULT_TOKEN", FakeVaultServer.ROOT_TOKEN)
+            .set("CASC_VAULT_PATHS", "secret/app")
+            .set("CASC_VAULT_SNAPSHOT", "true");
+        chain = RuleChain.outerRule(env).around(j);
+    }
+
+    @After
+    public void stopVault() {
+        vault.close();
+    }
+
+    @Test
+    public void shouldStartFromEncryptedSnapshotWhenVaultIsUnavailable() throws Exception {
+        new VaultSecretSource().init();
+        File file = new File(j.jenkins.getRootDir(),
+            VaultSecretSource.class.getName() + ".snapshot");
+        assertThat(file.isFile(), is(true));
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1),
+            not(containsString("first")));
+
+        vault.setErrorRate(1.0);
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+        assertThat(source.reveal("secret/app/password"), is(Optional.of("first")));
+    }
+
+    @Test
+    public void shouldReadVaultInBackgroundAfterSnapshot() throws Exception {
+        new VaultSecretSource().init();
+        vault.putSecret("secret/app", Collections.singletonMap("password", "second"));
+        vault.setLatency(1000);
+
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!source.reveal("password").equals(Optional.of("second"))
+            && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(source.reveal("password"), is(Optional.of("second")));
+    }
+
+    @Test
+    public void shouldRetryReadAfterSnapshotUntilVaultAnswers() throws Exception {
+        new VaultSecretSource().init();
+        vault.setErrorRate(1.0);
+
+        VaultSecretSource source = new VaultSecretSource();
+        source.init();
+        assertThat(source.reveal("password"), is(Optional.of("first")));
+
+        vault.putSecret("secret/app", Collections.singletonMap("password", "second"));
+        vault.setErrorRate(0.0);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!source.reveal("password").equals(Optional.of("second"))
+            && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(source.reveal("password"), is(Optional.of("second")));
+    }
+
+    @Test
+    public void shouldDeleteSnapshotWhenDisabled() throws Exception {
+        new VaultSecretSource().init();
+        File file = new File(j.jenkins.getRootDir(),
+            VaultSecretSource.class.getName() + ".snapshot");
+        assertThat(file.isFile(), is(true));
+
+        env.set("CASC_VAULT_SNAPSHOT", "false");
+        new VaultSecretSource().init();
+
+        assertThat(file.exists(), is(false));
+    }
+}
@@ -107,4 +107,40 @@ public class MaskingConsoleLogFilterSpec {
         assertThat(resultingLines[0], is("This is a ****."));
     }
 
+    @Test
+    public void automatonShouldMaskLikeRegex() throws Exception {
+        List<String> secrets = Arrays.asList("secret", "veryverysecret", "cret", "s\u00e9cr\u00e8t",
+            "multi\nline", null, "");
+        String[] lines = {
+            "This is a test.\n",
+            "This is veryverysecret test.\n",
+            "secretsecret cretsecret veryverysecre\n",
+            "Le mot est s\u00e9cr\u00e8t, pas secret\n",
+            "multi\n",
+            "line\n",
+            "no newline at the end: secret",
+        };
+
+        String expected = maskAll(secrets, lines);
+        assertThat(expected.contains("This is **** test.\n"), is(true));
+        MaskingConsoleLogFilter.USE_AUTOMATON = true;
+        try {
+            assertThat(maskAll(secrets, lines), is(expected));
+        } finally {
+            MaskingConsoleLogFilter.USE_AUTOMATON = false;
+        }
+    }
+
+    private static String maskAll(List<String> secrets, String[] lines) throws Exception {
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(),
+            secrets);
+        ByteArrayOutputStream resultingLog = new ByteArrayOutputStream();
+        try (OutputStream maskingLogger = filter.decorateLogger(mock(Run.class), resultingLog)) {
+            for (String line : lines) {
+                maskingLogger.write(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return resultingLog.toString(StandardCharsets.UTF_8);
+    }
+
 }
@@ -0,0 +1,96 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.github.jopenlibs.vault.VaultException;
+import io.github.jopenlibs.vault.response.VaultResponse;
+import io.github.jopenlibs.vault.rest.RestResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+public class VaultMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Before
+    public void setUp() {
+        VaultMetrics.setRecorder(new VaultMetricProvider.RegistryRecorder(() -> registry));
+    }
+
+    @After
+    public void tearDown() {
+        VaultMetrics.setRecorder(null);
+    }
+
+    @Test
+    public void shouldCountResponsesByStatusClass() throws Exception {
+        long retries = VaultMetrics.getRetries();
+
+        VaultMetrics.time("test-status", () -> response(200, 2));
+        VaultMetrics.time("test-status", () -> response(404, 0));
+        try {
+            VaultMetrics.time("test-status", () -> {
+                throw new VaultException("unavailable", 503);
+            });
+            fail("expected a VaultException");
+        } catch (VaultException e) {
+            // expected
+        }
+
+        assertThat(registry.timer("vault.test-status.duration").getCount(), is(3L));
+        assertThat(registry.meter("vault.test-status.status.2xx").getCount(), is(1L));
+        assertThat(registry.meter("vault.test-status.status.4xx").getCount(), is(1L));
+        assertThat(registry.meter("vault.test-status.status.5xx").getCount(), is(1L));
+        assertThat(VaultMetrics.getRetries(), is(retries + 2));
+        assertThat(VaultMetrics.getInFlight(), is(0));
+    }
+
+    @Test
+    public void shouldNotRecordDiscardedSamples() {
+        VaultMetrics.start("test-discard").discard();
+
+        assertThat(registry.getTimers(), not(hasKey("vault.test-discard.duration")));
+        assertThat(VaultMetrics.getInFlight(), is(0));
+    }
+
+    @Test
+    public void shouldRecordDurationsWithTimer() {
+        VaultMetrics.Recorder recorder = new VaultMetricProvider.RegistryRecorder(() -> registry);
+        for (int i = 0; i < 90; i++) {
+            recorder.record("test-timer", TimeUnit.MILLISECONDS.toNanos(3), "2xx");
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.record("test-timer", TimeUnit.MILLISECONDS.toNanos(400), "2xx");
+        }
+
+        Timer timer = registry.timer("vault.test-timer.duration");
+        assertThat(timer.getCount(), is(100L));
+        assertThat(timer.getSnapshot().getMedian(), is((double) TimeUnit.MILLISECONDS.toNanos(3)));
+        assertThat(timer.getSnapshot().getMax(), is(TimeUnit.MILLISECONDS.toNanos(400)));
+    }
+
+    @Test
+    public void shouldExposeGauges() {
+        Map<String, Metric> metrics = new VaultMetricProvider().getMetricSet().getMetrics();
+
+        assertThat(metrics, hasKey("vault.tokenCache.hitRatio"));
+        assertThat(((Gauge<?>) metrics.get("vault.inFlight")).getValue(), is(0));
+    }
+
+    private static VaultResponse response(int status, int retries) {
+        return new VaultResponse(new RestResponse(status, "application/json",
+            "{}".getBytes(StandardCharsets.UTF_8)), retries);
+    }
+}
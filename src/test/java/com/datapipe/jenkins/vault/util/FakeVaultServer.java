@@ -0,0 +1,628 @@
+package com.datapipe.jenkins.vault.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.jopenlibs.vault.json.Json;
+import io.github.jopenlibs.vault.json.JsonArray;
+import io.github.jopenlibs.vault.json.JsonObject;
+import io.github.jopenlibs.vault.json.JsonValue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Vault HTTP API, for tests that cannot run Docker and for load
+ * tests. Only the endpoints used by the plugin are implemented:
+ * <ul>
+ *     <li>KV v1 and v2 reads and writes, KV v2 metadata</li>
+ *     <li>dynamic secrets with leases</li>
+ *     <li>login with approle, userpass, jwt (kubernetes) and aws, and plain tokens</li>
+ *     <li>token create, lookup-self, renew-self and revoke-self</li>
+ *     <li>lease renew, revoke and revoke-prefix</li>
+ * </ul>
+ * Latency, failures and throttling can be injected to test the behavior of the plugin under
+ * load or against an unhealthy Vault. Unlike {@link VaultContainer} it needs neither Docker nor
+ * network access.
+ */
+public class FakeVaultServer implements AutoCloseable {
+
+    public static final String ROOT_TOKEN = "fake-root-token";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, Integer> kvMounts = new ConcurrentHashMap<>();
+    private final Map<String, List<Map<String, String>>> kvSecrets = new ConcurrentHashMap<>();
+    private final Map<String, DynamicSecret> dynamicSecrets = new ConcurrentHashMap<>();
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Set<String> revokedLeases = ConcurrentHashMap.newKeySet();
+    private final Set<String> unrevokableLeases = ConcurrentHashMap.newKeySet();
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private final Map<String, AuthMount> authMounts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    private volatile long tokenTtl = 3600;
+    private volatile boolean tokenRenewable = true;
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile Semaphore throttle;
+    private final AtomicLong tokenCounter = new AtomicLong();
+
+    public FakeVaultServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        tokens.put(ROOT_TOKEN, new Token(ROOT_TOKEN,
+            Collections.singletonList("root"), 0, false));
+        mountKv("secret", 2);
+        mountKv("kv", 1);
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ---------------------------------------------------------------- configuration
+
+    /**
+     * Mount a KV secrets engine. {@code secret} (v2) and {@code kv} (v1) are mounted by default.
+     */
+    public FakeVaultServer mountKv(String mount, int version) {
+        kvMounts.put(mount, version);
+        return this;
+    }
+
+    /**
+     * Write a new version of a KV secret.
+     * @param path full path including the mount, e.g. {@code secret/app}
+     */
+    public FakeVaultServer putSecret(String path, Map<String, String> data) {
+        kvSecrets.computeIfAbsent(path, k -> Collections.synchronizedList(new ArrayList<>()))
+            .add(new LinkedHashMap<>(data));
+        return this;
+    }
+
+    /**
+     * Serve a dynamic secret: every read returns the data with a new lease.
+     * @param path full path, e.g. {@code database/creds/role}
+     */
+    public FakeVaultServer putDynamicSecret(String path, Map<String, String> data,
+        long leaseDuration) {
+        dynamicSecrets.put(path, new DynamicSecret(new LinkedHashMap<>(data), leaseDuration));
+        return this;
+    }
+
+    public FakeVaultServer addAppRole(String mount, String roleId, String secretId,
+        String... policies) {
+        authMounts.put(mount, new AuthMount(body -> roleId.equals(body.getString("role_id", null))
+            && secretId.equals(body.getString("secret_id", null)), policies));
+        return this;
+    }
+
+    public FakeVaultServer addUserPass(String mount, String username, String password,
+        String... policies) {
+        authMounts.put(mount, new AuthMount(body -> username.equals(body.getString("username", null))
+            && password.equals(body.getString("password", null)), policies));
+        return this;
+    }
+
+    /**
+     * Accept jwt logins, as used by the kubernetes and jwt auth methods.
+     */
+    public FakeVaultServer addJwtRole(String mount, String role, String jwt,
+        String... policies) {
+        authMounts.put(mount, new AuthMount(body -> role.equals(body.getString("role", null))
+            && jwt.equals(body.getString("jwt", null)), policies));
+        return this;
+    }
+
+    /**
+     * Accept every signed AWS IAM login, the signature itself is not verified.
+     */
+    public FakeVaultServer addAwsIamRole(String mount, String role, String... policies) {
+        authMounts.put(mount, new AuthMount(body -> body.get("iam_request_body") != null
+            && (role == null || role.equals(body.getString("role", null))), policies));
+        return this;
+    }
+
+    /**
+     * Issue a token that can be used directly, like {@code vault token create}.
+     */
+    public String createToken(long ttl, boolean renewable, String... policies) {
+        return issueToken(Arrays.asList(policies), ttl, renewable).id;
+    }
+
+    public FakeVaultServer setTokenTtl(long seconds, boolean renewable) {
+        this.tokenTtl = seconds;
+        this.tokenRenewable = renewable;
+        return this;
+    }
+
+    // ---------------------------------------------------------------- fault injection
+
+    /**
+     * Delay every response.
+     */
+    public FakeVaultServer setLatency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * Answer this share of the requests with HTTP 500.
+     * @param errorRate between 0 and 1
+     */
+    public FakeVaultServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answer requests with HTTP 429, like a Vault rate limit quota, while more than
+     * {@code maxConcurrentRequests} are in flight. 0 disables throttling.
+     */
+    public FakeVaultServer setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.throttle = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+        return this;
+    }
+
+    /**
+     * Answer revocations of a lease with HTTP 500.
+     */
+    public FakeVaultServer failRevocation(String leaseId) {
+        unrevokableLeases.add(leaseId);
+        return this;
+    }
+
+    // ---------------------------------------------------------------- observation
+
+    /**
+     * @param path request path without the {@code /v1/} prefix, e.g. {@code secret/data/app}
+     * @return number of requests received for the path
+     */
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getTotalRequestCount() {
+        return requestCounts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    public Set<String> getActiveLeases() {
+        return Collections.unmodifiableSet(leases.keySet());
+    }
+
+    public Set<String> getRevokedLeases() {
+        return Collections.unmodifiableSet(revokedLeases);
+    }
+
+    // ---------------------------------------------------------------- request handling
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/v1/".length());
+        requestCounts.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+
+        Semaphore semaphore = throttle;
+        if (semaphore != null && !semaphore.tryAcquire()) {
+            send(exchange, 429, errors("request path \"" + path + "\": rate limit quota exceeded"));
+            return;
+        }
+        try {
+            if (latencyMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                send(exchange, 500, errors("injected failure"));
+                return;
+            }
+            JsonObject body = readBody(exchange);
+            Response response = dispatch(exchange.getRequestMethod(), path, body,
+                exchange.getRequestHeaders().getFirst("X-Vault-Token"));
+            send(exchange, response.status, response.body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, errors("interrupted"));
+        } catch (RuntimeException e) {
+            send(exchange, 500, errors(String.valueOf(e)));
+        } finally {
+            if (semaphore != null) {
+                semaphore.release();
+            }
+        }
+    }
+
+    private Response dispatch(String method, String path, JsonObject body, String tokenId) {
+        if (path.equals("sys/health")) {
+            return ok(Json.object().add("initialized", true).add("sealed", false));
+        }
+        if (path.startsWith("auth/") && path.contains("/login")) {
+            return login(path, body);
+        }
+
+        Token token = tokenId == null ? null : tokens.get(tokenId);
+        if (token == null || token.isExpired()) {
+            return new Response(403, errors("permission denied"));
+        }
+
+        switch (path) {
+            case "auth/token/lookup-self":
+                return ok(Json.object().add("data", token.toLookup()));
+            case "auth/token/renew-self":
+                token.renew(tokenTtl);
+                return ok(Json.object().add("auth", token.toAuth()));
+            case "auth/token/revoke-self":
+                tokens.remove(token.id);
+                return new Response(204, null);
+            case "sys/leases/revoke":
+                return revokeLease(body.getString("lease_id", ""));
+            case "sys/leases/renew":
+                return renewLease(body.getString("lease_id", ""), body.getLong("increment", 0));
+            default:
+                break;
+        }
+        if (path.startsWith("auth/token/create")) {
+            return createToken(body);
+        }
+        if (path.startsWith("sys/leases/revoke-prefix/")) {
+            String prefix = path.substring("sys/leases/revoke-prefix/".length());
+            leases.keySet().stream().filter(id -> id.startsWith(prefix)).forEach(this::revokeLease);
+            return new Response(204, null);
+        }
+        if (path.startsWith("sys/leases/revoke/")) {
+            return revokeLease(path.substring("sys/leases/revoke/".length()));
+        }
+        if (path.startsWith("sys/leases/renew/") || path.startsWith("sys/renew/")) {
+            return renewLease(path.substring(path.indexOf("renew/") + "renew/".length()),
+                body.getLong("increment", 0));
+        }
+        return secret(method, path, body);
+    }
+
+    private Response login(String path, JsonObject body) {
+        // auth/<mount>/login or auth/<mount>/login/<username>
+        String rest = path.substring("auth/".length());
+        int login = rest.lastIndexOf("/login");
+        String mount = rest.substring(0, login);
+        String user = rest.substring(login + "/login".length());
+        if (user.startsWith("/")) {
+            body.set("username", user.substring(1));
+        }
+        AuthMount authMount = authMounts.get(mount);
+        if (authMount == null || !authMount.accepts(body)) {
+            return new Response(400, errors("invalid credentials"));
+        }
+        Token token = issueToken(authMount.policies, tokenTtl, tokenRenewable);
+        return ok(Json.object().add("auth", token.toAuth()));
+    }
+
+    private Response createToken(JsonObject body) {
+        List<String> policies = new ArrayList<>();
+        JsonValue requested = body.get("policies");
+        if (requested != null && requested.isArray()) {
+            requested.asArray().values().forEach(v -> policies.add(v.asString()));
+        }
+        long ttl = tokenTtl;
+        JsonValue requestedTtl = body.get("ttl");
+        if (requestedTtl != null) {
+            ttl = requestedTtl.isNumber() ? requestedTtl.asLong() : parseDuration(requestedTtl.asString());
+        }
+        Token token = issueToken(policies, ttl, tokenRenewable);
+        return ok(Json.object().add("auth", token.toAuth()));
+    }
+
+    private Response secret(String method, String path, JsonObject body) {
+        DynamicSecret dynamic = dynamicSecrets.get(path);
+        if (dynamic != null) {
+            Lease lease = new Lease(path + "/" + UUID.randomUUID(), dynamic.leaseDuration);
+            leases.put(lease.id, lease);
+            return ok(Json.object()
+                .add("lease_id", lease.id)
+                .add("lease_duration", dynamic.leaseDuration)
+                .add("renewable", true)
+                .add("data", toJson(dynamic.data)));
+        }
+
+        String mount = kvMounts.keySet().stream()
+            .filter(m -> path.startsWith(m + "/"))
+            .max((a, b) -> Integer.compare(a.length(), b.length()))
+            .orElse(null);
+        if (mount == null) {
+            return new Response(404, errors("no handler for route \"" + path + "\""));
+        }
+        String key = path.substring(mount.length() + 1);
+        boolean write = method.equals("POST") || method.equals("PUT");
+        if (kvMounts.get(mount) == 1) {
+            if (write) {
+                putSecret(path, toMap(body));
+                return new Response(204, null);
+            }
+            return readKv(path, false);
+        }
+        if (key.startsWith("data/")) {
+            String secretPath = mount + "/" + key.substring("data/".length());
+            if (write) {
+                JsonValue data = body.get("data");
+                putSecret(secretPath, data == null ? Collections.emptyMap() : toMap(data.asObject()));
+                return ok(Json.object().add("data", metadata(secretPath)));
+            }
+            return readKv(secretPath, true);
+        }
+        if (key.startsWith("metadata/")) {
+            String secretPath = mount + "/" + key.substring("metadata/".length());
+            if (!kvSecrets.containsKey(secretPath)) {
+                return new Response(404, errors());
+            }
+            return ok(Json.object().add("data", metadata(secretPath)));
+        }
+        return new Response(404, errors("no handler for route \"" + path + "\""));
+    }
+
+    private Response readKv(String path, boolean v2) {
+        List<Map<String, String>> versions = kvSecrets.get(path);
+        if (versions == null || versions.isEmpty()) {
+            return new Response(404, errors());
+        }
+        JsonObject data = toJson(versions.get(versions.size() - 1));
+        JsonObject response = Json.object()
+            .add("lease_id", "")
+            .add("lease_duration", v2 ? 0 : 2764800)
+            .add("renewable", false);
+        if (v2) {
+            response.add("data", Json.object().add("data", data).add("metadata", metadata(path)));
+        } else {
+            response.add("data", data);
+        }
+        return ok(response);
+    }
+
+    private JsonObject metadata(String path) {
+        int version = kvSecrets.getOrDefault(path, Collections.emptyList()).size();
+        return Json.object()
+            .add("version", version)
+            .add("current_version", version)
+            .add("created_time", "2024-01-01T00:00:00Z")
+            .add("deletion_time", "")
+            .add("destroyed", false);
+    }
+
+    private Response revokeLease(String leaseId) {
+        if (unrevokableLeases.contains(leaseId)) {
+            return new Response(500, errors("failed to revoke lease"));
+        }
+        if (leases.remove(leaseId) != null) {
+            revokedLeases.add(leaseId);
+        }
+        return new Response(204, null);
+    }
+
+    private Response renewLease(String leaseId, long increment) {
+        Lease lease = leases.get(leaseId);
+        if (lease == null || lease.isExpired()) {
+            return new Response(400, errors("lease not found or lease is not renewable"));
+        }
+        lease.renew(increment > 0 ? increment : lease.duration);
+        return ok(Json.object()
+            .add("lease_id", leaseId)
+            .add("lease_duration", lease.duration)
+            .add("renewable", true));
+    }
+
+    private Token issueToken(List<String> policies, long ttl, boolean renewable) {
+        String id = "hvs.fake" + tokenCounter.incrementAndGet();
+        Token token = new Token(id, policies, ttl, renewable);
+        tokens.put(id, token);
+        return token;
+    }
+
+    private static long parseDuration(String value) {
+        String v = value.trim();
+        long unit = 1;
+        if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("m")) {
+            v = v.substring(0, v.length() - 1);
+            unit = 60;
+        } else if (v.endsWith("h")) {
+            v = v.substring(0, v.length() - 1);
+            unit = 3600;
+        }
+        return Long.parseLong(v) * unit;
+    }
+
+    private static JsonObject readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (body.isBlank()) {
+                return Json.object();
+            }
+            JsonValue value = Json.parse(body);
+            return value.isObject() ? value.asObject() : Json.object();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonObject body)
+        throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Response ok(JsonObject body) {
+        return new Response(200, body);
+    }
+
+    private static JsonObject errors(String... errors) {
+        return Json.object().add("errors", Json.array(errors));
+    }
+
+    private static JsonObject toJson(Map<String, String> data) {
+        JsonObject object = Json.object();
+        data.forEach(object::add);
+        return object;
+    }
+
+    private static Map<String, String> toMap(JsonObject object) {
+        Map<String, String> data = new HashMap<>();
+        for (String name : object.names()) {
+            JsonValue value = object.get(name);
+            data.put(name, value.isString() ? value.asString() : value.toString());
+        }
+        return data;
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final JsonObject body;
+
+        Response(int status, JsonObject body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private interface LoginCheck {
+        boolean accepts(JsonObject body);
+    }
+
+    private static final class AuthMount {
+
+        private final LoginCheck check;
+        private final List<String> policies;
+
+        AuthMount(LoginCheck check, String... policies) {
+            this.check = check;
+            this.policies = Arrays.asList(policies);
+        }
+
+        boolean accepts(JsonObject body) {
+            return check.accepts(body);
+        }
+    }
+
+    private static final class DynamicSecret {
+
+        private final Map<String, String> data;
+        private final long leaseDuration;
+
+        DynamicSecret(Map<String, String> data, long leaseDuration) {
+            this.data = data;
+            this.leaseDuration = leaseDuration;
+        }
+    }
+
+    private static final class Lease {
+
+        private final String id;
+        private volatile long duration;
+        private volatile long expiresAt;
+
+        Lease(String id, long duration) {
+            this.id = id;
+            renew(duration);
+        }
+
+        void renew(long seconds) {
+            duration = seconds;
+            expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    private static final class Token {
+
+        private final String id;
+        private final List<String> policies;
+        private final boolean renewable;
+        private volatile long ttl;
+        // 0 for tokens that never expire
+        private volatile long expiresAt;
+
+        Token(String id, List<String> policies, long ttl, boolean renewable) {
+            this.id = id;
+            this.policies = policies;
+            this.renewable = renewable;
+            renew(ttl);
+        }
+
+        void renew(long seconds) {
+            ttl = seconds;
+            expiresAt = seconds <= 0 ? 0 : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        }
+
+        boolean isExpired() {
+            return expiresAt != 0 && System.currentTimeMillis() >= expiresAt;
+        }
+
+        long remainingTtl() {
+            if (expiresAt == 0) {
+                return 0;
+            }
+            return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(expiresAt - System.currentTimeMillis()));
+        }
+
+        JsonObject toAuth() {
+            return Json.object()
+                .add("client_token", id)
+                .add("accessor", "accessor-" + id)
+                .add("policies", policyArray())
+                .add("token_policies", policyArray())
+                .add("lease_duration", ttl)
+                .add("renewable", renewable);
+        }
+
+        JsonObject toLookup() {
+            return Json.object()
+                .add("id", id)
+                .add("accessor", "accessor-" + id)
+                .add("policies", policyArray())
+                .add("ttl", remainingTtl())
+                .add("creation_ttl", ttl)
+                .add("renewable", renewable);
+        }
+
+        private JsonArray policyArray() {
+            return Json.array(policies.toArray(new String[0]));
+        }
+    }
+}